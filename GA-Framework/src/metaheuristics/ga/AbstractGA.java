@@ -1,12 +1,27 @@
 package metaheuristics.ga;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
+import metaheuristics.util.EventStream;
 import problems.Evaluator;
+import problems.ProfilingEvaluator;
 import solutions.Solution;
 
 /**
@@ -21,18 +36,327 @@ import solutions.Solution;
  */
 public abstract class AbstractGA<G extends Number, F> {
 
+	/**
+	 * A chromosome is the list of genes of a candidate. The knapsack weight of
+	 * the selected genes is kept up to date by {@link #add}, {@link #set},
+	 * {@link #addAll} and {@link #clear}, so {@link #GetCurrentPeso} is O(1)
+	 * instead of a pass over all the loci. With several knapsack constraints
+	 * the load of every dimension is tracked as well, and {@link #fits} and
+	 * {@link #isFeasible} check all of them. The same methods discard the
+	 * cached fitness (see {@link AbstractGA#cachedFitness}). The mutators that
+	 * shift loci (insertions and removals at an index, bulk removals, sorting)
+	 * recompute the weights in O(n), and {@link #subList} gives a read-only
+	 * view, so no mutation bypasses the tracking. The genes are also cached as
+	 * a packed bit mask (see {@link #getPacked}), on which the crossover
+	 * blends parents a word at a time.
+	 */
 	@SuppressWarnings("serial")
 	public class Chromosome extends ArrayList<G> {
+
+		/**
+		 * the total weight of the genes currently set to 1, in the first
+		 * dimension
+		 */
+		private int peso = 0;
+
+		/**
+		 * the load of each dimension, when there are several knapsack
+		 * constraints
+		 */
+		private final double[] load = constraintCount > 1 ? new double[constraintCount] : null;
+
+		/**
+		 * the fitness of the chromosome, or null if it was not evaluated since
+		 * its last modification
+		 */
+		private Double fitness = null;
+
+		/**
+		 * true if {@link #fitness} holds just an upper bound, below the
+		 * threshold of {@link AbstractGA#boundedFitness}
+		 */
+		private boolean bounded = false;
+
+		/**
+		 * the genes packed 64 per word, gene j being bit (j & 63) of word
+		 * j >>> 6, or null if not built since the last shifting mutation
+		 */
+		private long[] packed = null;
+
 		public int GetCurrentPeso() {
-			Double pesos[] = ObjFunction.getPesos();
-			int peso = 0;
-			for(int i = 0; i < chromosomeSize; i++) {
-				Integer gene = (Integer) this.get(i);
-				if(gene == 1) {
-					peso += pesos[i];					
+			return peso;
+		}
+
+		/**
+		 * Tells whether the chromosome was pruned, that is, evaluated only as
+		 * far as a bound of its fitness below the threshold of
+		 * {@link AbstractGA#cachedFitness(Chromosome, double)}.
+		 * 
+		 * @return true if the cached fitness is just a bound.
+		 */
+		public boolean isPruned() {
+			return fitness != null && bounded;
+		}
+
+		/**
+		 * Gives the genes packed as a bit mask, building it on the first call.
+		 * Single-gene writes through {@link #set} keep it up to date. The
+		 * array is shared with the chromosome and must not be modified.
+		 * 
+		 * @return the packed genes.
+		 */
+		public long[] getPacked() {
+			if (packed == null) {
+				long[] bits = new long[(chromosomeSize + 63) >>> 6];
+				for (int locus = 0; locus < Math.min(size(), chromosomeSize); locus++) {
+					if (get(locus).intValue() == 1)
+						bits[locus >>> 6] |= 1L << locus;
 				}
+				packed = bits;
 			}
-			return peso;
+			return packed;
+		}
+
+		/**
+		 * Fills an empty chromosome from packed genes, visiting the set bits
+		 * only; the list itself is copied in a single block. The chromosome
+		 * keeps the array as its packed genes.
+		 * 
+		 * @param bits
+		 *            The packed genes, 64 loci per word.
+		 */
+		@SuppressWarnings("unchecked")
+		public void fill(long[] bits) {
+			if ((chromosomeSize & 63) != 0)
+				bits[bits.length - 1] &= -1L >>> (64 - (chromosomeSize & 63));
+			Object[] genes = new Object[chromosomeSize];
+			Arrays.fill(genes, (G) (Integer) 0);
+			G one = (G) (Integer) 1;
+			for (int w = 0; w < bits.length; w++) {
+				for (long set = bits[w]; set != 0; set &= set - 1) {
+					int locus = (w << 6) + Long.numberOfTrailingZeros(set);
+					genes[locus] = one;
+					addWeight(locus, 1);
+				}
+			}
+			super.addAll((List<G>) (List<?>) Arrays.asList(genes));
+			fitness = null;
+			packed = bits;
+		}
+
+		/**
+		 * Tells whether a gene currently unset can be set without exceeding
+		 * any knapsack capacity.
+		 * 
+		 * @param locus
+		 *            The locus of the gene.
+		 * @return true if the gene fits.
+		 */
+		public boolean fits(int locus) {
+			if (load == null)
+				return peso + elementWeights[locus] <= capacities[0];
+			int base = locus * constraintCount;
+			for (int r = 0; r < constraintCount; r++) {
+				if (load[r] + elementWeights[base + r] > capacities[r])
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return true if the chromosome respects every knapsack capacity.
+		 */
+		public boolean isFeasible() {
+			if (load == null)
+				return peso <= capacities[0];
+			for (int r = 0; r < constraintCount; r++) {
+				if (load[r] > capacities[r])
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Gives the load of one knapsack dimension.
+		 * 
+		 * @param dimension
+		 *            The dimension.
+		 * @return the total weight of the selected genes in that dimension.
+		 */
+		public double getLoad(int dimension) {
+			return load == null ? peso : load[dimension];
+		}
+
+		/**
+		 * @return the total amount by which the loads exceed the capacities.
+		 */
+		public double getOverweight() {
+			if (load == null)
+				return Math.max(0.0, peso - capacities[0]);
+			double over = 0.0;
+			for (int r = 0; r < constraintCount; r++) {
+				over += Math.max(0.0, load[r] - capacities[r]);
+			}
+			return over;
+		}
+
+		private void addWeight(int locus, int sign) {
+			int base = locus * constraintCount;
+			peso += sign * elementWeights[base];
+			if (load != null) {
+				for (int r = 0; r < constraintCount; r++) {
+					load[r] += sign * elementWeights[base + r];
+				}
+			}
+		}
+
+		@Override
+		public boolean add(G gene) {
+			if (gene.intValue() == 1) {
+				addWeight(size(), 1);
+			}
+			fitness = null;
+			packed = null;
+			return super.add(gene);
+		}
+
+		@Override
+		public boolean addAll(Collection<? extends G> genes) {
+			int locus = size();
+			for (G gene : genes) {
+				if (gene.intValue() == 1) {
+					addWeight(locus, 1);
+				}
+				locus++;
+			}
+			fitness = null;
+			packed = null;
+			return super.addAll(genes);
+		}
+
+		@Override
+		public G set(int locus, G gene) {
+			G old = super.set(locus, gene);
+			if (old.intValue() != gene.intValue()) {
+				if (gene.intValue() == 1) {
+					addWeight(locus, 1);
+				} else if (old.intValue() == 1) {
+					addWeight(locus, -1);
+				}
+				if (packed != null)
+					packed[locus >>> 6] ^= 1L << locus;
+				fitness = null;
+			}
+			return old;
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			peso = 0;
+			if (load != null)
+				Arrays.fill(load, 0.0);
+			fitness = null;
+			packed = null;
+		}
+
+		/**
+		 * Recomputes the weights of all the loci, after a mutation that
+		 * shifted them, and discards the cached fitness. Loci past the
+		 * chromosome size, while an insertion is pending its removal, weigh
+		 * nothing.
+		 */
+		private void retrack() {
+			peso = 0;
+			if (load != null)
+				Arrays.fill(load, 0.0);
+			for (int locus = 0; locus < Math.min(size(), chromosomeSize); locus++) {
+				if (get(locus).intValue() == 1)
+					addWeight(locus, 1);
+			}
+			fitness = null;
+			packed = null;
+		}
+
+		@Override
+		public void add(int locus, G gene) {
+			super.add(locus, gene);
+			retrack();
+		}
+
+		@Override
+		public boolean addAll(int locus, Collection<? extends G> genes) {
+			boolean changed = super.addAll(locus, genes);
+			retrack();
+			return changed;
+		}
+
+		@Override
+		public G remove(int locus) {
+			G old = super.remove(locus);
+			retrack();
+			return old;
+		}
+
+		@Override
+		public boolean remove(Object gene) {
+			boolean changed = super.remove(gene);
+			if (changed)
+				retrack();
+			return changed;
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> genes) {
+			boolean changed = super.removeAll(genes);
+			if (changed)
+				retrack();
+			return changed;
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> genes) {
+			boolean changed = super.retainAll(genes);
+			if (changed)
+				retrack();
+			return changed;
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super G> filter) {
+			boolean changed = super.removeIf(filter);
+			if (changed)
+				retrack();
+			return changed;
+		}
+
+		@Override
+		protected void removeRange(int fromLocus, int toLocus) {
+			super.removeRange(fromLocus, toLocus);
+			retrack();
+		}
+
+		@Override
+		public void replaceAll(UnaryOperator<G> operator) {
+			super.replaceAll(operator);
+			retrack();
+		}
+
+		@Override
+		public void sort(Comparator<? super G> c) {
+			super.sort(c);
+			retrack();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * 
+		 * The view is read-only, since writes through it would bypass the
+		 * weight tracking.
+		 */
+		@Override
+		public List<G> subList(int fromLocus, int toLocus) {
+			return Collections.unmodifiableList(super.subList(fromLocus, toLocus));
 		}
 	}
 
@@ -41,6 +365,31 @@ public abstract class AbstractGA<G extends Number, F> {
 
 	}
 
+	/**
+	 * The methods available for selecting the parents of a generation, see
+	 * {@link AbstractGA#selectParents}.
+	 */
+	public enum SelectionMethod {
+		/** k-ary tournament, k given by {@link AbstractGA#tournamentSize} */
+		TOURNAMENT,
+		/** linear ranking, pressure given by {@link AbstractGA#rankPressure} */
+		RANK,
+		/** stochastic universal sampling over fitness proportional weights */
+		STOCHASTIC_UNIVERSAL,
+		/** roulette wheel over fitness proportional weights */
+		ROULETTE
+	}
+
+	/**
+	 * The crossover operators available for a generation.
+	 */
+	public enum CrossoverMethod {
+		/** see {@link AbstractGA#uniformCrossover} */
+		UNIFORM,
+		/** see {@link AbstractGA#crossover} */
+		TWO_POINT
+	}
+
 	/**
 	 * flag that indicates whether the code should print more information on
 	 * screen
@@ -48,9 +397,21 @@ public abstract class AbstractGA<G extends Number, F> {
 	public static boolean verbose = true;
 
 	/**
-	 * a random number generator
+	 * the random number generator of the GA, seeded by {@link #setSeed}; each
+	 * GA owns its own, so that GAs running side by side do not draw from the
+	 * same sequence
+	 */
+	protected final Random rng = new Random(0);
+
+	/**
+	 * the first bytes of a population snapshot ("GAPS")
 	 */
-	public static final Random rng = new Random(0);
+	protected static final int SNAPSHOT_MAGIC = 0x47415053;
+
+	/**
+	 * the version of the population snapshot format
+	 */
+	protected static final int SNAPSHOT_VERSION = 2;
 
 	/**
 	 * the objective function being optimized
@@ -62,6 +423,12 @@ public abstract class AbstractGA<G extends Number, F> {
 	 */
 	protected int timeToRun;
 
+	/**
+	 * the largest number of generations of a run, which also stops at the
+	 * time limit; unlimited by default
+	 */
+	protected long maxGenerations = Long.MAX_VALUE;
+
 	/**
 	 * the size of the population
 	 */
@@ -72,6 +439,23 @@ public abstract class AbstractGA<G extends Number, F> {
 	 */
 	protected int chromosomeSize;
 
+	/**
+	 * the number of knapsack constraints
+	 */
+	protected final int constraintCount;
+
+	/**
+	 * the weights of the elements, the {@link #constraintCount} dimensions of
+	 * each element being contiguous: elementWeights[locus * constraintCount +
+	 * dimension]
+	 */
+	protected final double[] elementWeights;
+
+	/**
+	 * the capacity of each knapsack dimension
+	 */
+	protected final double[] capacities;
+
 	/**
 	 * the probability of performing a mutation
 	 */
@@ -92,6 +476,97 @@ public abstract class AbstractGA<G extends Number, F> {
 	 */
 	protected Chromosome bestChromosome;
 
+	/**
+	 * the crossover operator of the generations
+	 */
+	protected CrossoverMethod crossoverMethod = CrossoverMethod.UNIFORM;
+
+	/**
+	 * the bias of the uniform crossover toward the second parent
+	 */
+	protected double uniformBias = 0.5;
+
+	/**
+	 * the method used for selecting the parents
+	 */
+	protected SelectionMethod selectionMethod = SelectionMethod.TOURNAMENT;
+
+	/**
+	 * the number of chromosomes competing in each tournament
+	 */
+	protected int tournamentSize = 2;
+
+	/**
+	 * the expected number of times the best ranked chromosome is selected
+	 * under linear ranking, between 1 (no pressure) and 2
+	 */
+	protected double rankPressure = 1.5;
+
+	/**
+	 * flag that indicates whether the offsprings that cannot beat the
+	 * replacement threshold are only bounded, instead of fully evaluated (see
+	 * {@link #boundedFitness}). Only the steady-state replacement of
+	 * {@link AsyncGA} has such a threshold, its worst slot: in the
+	 * generational loop every offspring enters the next population, and so is
+	 * evaluated exactly whatever this flag
+	 */
+	protected boolean boundPruning = false;
+
+	/**
+	 * flag that indicates whether the chromosomes may exceed the knapsack
+	 * capacities, their fitness being then penalized by
+	 * {@link #penaltyWeight} times their overweight
+	 */
+	protected boolean penaltyMode = false;
+
+	/**
+	 * the penalty per unit of overweight, adapted each generation (see
+	 * {@link #adaptPenalty})
+	 */
+	protected double penaltyWeight = 1.0;
+
+	/**
+	 * the factor by which {@link #penaltyWeight} is increased or decreased
+	 */
+	protected double penaltyFactor = 1.1;
+
+	/**
+	 * the desired share of feasible chromosomes in the population
+	 */
+	protected double feasibleTarget = 0.5;
+
+	/**
+	 * the profiler decorating {@link #ObjFunction}, or null when the
+	 * evaluations are not profiled (see {@link #enableProfiling})
+	 */
+	protected ProfilingEvaluator<F> profiler;
+
+	/**
+	 * the initial population of the next run, loaded by {@link #loadSnapshot}
+	 */
+	protected Population seedPopulation;
+
+	/**
+	 * the number of distinct chromosomes kept in the {@link #elite} archive
+	 */
+	protected int eliteSize = 10;
+
+	/**
+	 * the best distinct chromosomes found so far
+	 */
+	protected EliteArchive<Chromosome> elite;
+
+	/**
+	 * the number of generations between two path relinking steps (see
+	 * {@link #relinkElite}), or 0 for no path relinking
+	 */
+	protected int relinkInterval = 0;
+
+	/**
+	 * the stream to which the progress of the run is published, or null
+	 */
+	protected EventStream events = null;
+
 	/**
 	 * Creates a new solution which is empty, i.e., does not contain any
 	 * candidate solution element.
@@ -130,87 +605,657 @@ public abstract class AbstractGA<G extends Number, F> {
 	 */
 	protected abstract Double fitness(Chromosome chromosome);
 
+	/**
+	 * Gives the fitness of a chromosome, calling {@link #fitness} only if the
+	 * chromosome was modified since its last evaluation, or if only a bound
+	 * of its fitness is cached. All the GA steps use this method, so each
+	 * chromosome is evaluated once per generation.
+	 * 
+	 * @param chromosome
+	 *            The genotype being considered for fitness evaluation.
+	 * @return The fitness value for the input chromosome.
+	 */
+	protected double cachedFitness(Chromosome chromosome) {
+		if (chromosome.fitness == null || chromosome.bounded) {
+			chromosome.fitness = fitness(chromosome);
+			chromosome.bounded = false;
+		}
+		return penalized(chromosome, chromosome.fitness);
+	}
+
+	/**
+	 * Evaluates at once the chromosomes of a population whose fitness is not
+	 * cached yet, through {@link #fitnessBatch}, and caches their fitness.
+	 * 
+	 * @param population
+	 *            The chromosomes being evaluated.
+	 */
+	protected void evaluateBatch(List<Chromosome> population) {
+
+		List<Chromosome> pending = new ArrayList<Chromosome>();
+		Set<Chromosome> seen = Collections.newSetFromMap(new IdentityHashMap<Chromosome, Boolean>());
+		for (Chromosome c : population) {
+			if ((c.fitness == null || c.bounded) && seen.add(c))
+				pending.add(c);
+		}
+		if (pending.isEmpty())
+			return;
+
+		double[] values = fitnessBatch(pending);
+		for (int i = 0; i < values.length; i++) {
+			pending.get(i).fitness = values[i];
+			pending.get(i).bounded = false;
+		}
+	}
+
+	/**
+	 * Gives the fitness of several chromosomes. The default evaluates them one
+	 * by one with {@link #fitness}; subclasses may share work among them.
+	 * 
+	 * @param chromosomes
+	 *            The chromosomes, without duplicates.
+	 * @return The fitness of each chromosome.
+	 */
+	protected double[] fitnessBatch(List<Chromosome> chromosomes) {
+		double[] values = new double[chromosomes.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = fitness(chromosomes.get(i));
+		}
+		return values;
+	}
+
+	/**
+	 * Subtracts from a fitness the penalty of the chromosome overweight, in
+	 * the {@link #penaltyMode}. The penalty is applied when the fitness is
+	 * read, so that changes of {@link #penaltyWeight} apply to the cached
+	 * values as well.
+	 * 
+	 * @param chromosome
+	 *            The chromosome.
+	 * @param fitness
+	 *            The fitness of the chromosome, disregarding its weight.
+	 * @return The penalized fitness.
+	 */
+	protected double penalized(Chromosome chromosome, double fitness) {
+		if (!penaltyMode)
+			return fitness;
+		return fitness - penaltyWeight * chromosome.getOverweight();
+	}
+
+	/**
+	 * Tells whether an operator may set a gene currently unset: always in the
+	 * {@link #penaltyMode}, and only if the gene fits in the knapsack
+	 * otherwise.
+	 * 
+	 * @param chromosome
+	 *            The chromosome being changed.
+	 * @param locus
+	 *            The locus of the gene.
+	 * @return true if the gene may be set.
+	 */
+	protected boolean canSet(Chromosome chromosome, int locus) {
+		return penaltyMode || chromosome.fits(locus);
+	}
+
+	/**
+	 * Adapts the {@link #penaltyWeight} to the share of feasible chromosomes
+	 * in the population: the weight grows while fewer than
+	 * {@link #feasibleTarget} of them are feasible, and shrinks otherwise.
+	 * 
+	 * @param population
+	 *            The current population.
+	 */
+	protected void adaptPenalty(Population population) {
+
+		int feasible = 0;
+		for (Chromosome c : population) {
+			if (c.isFeasible())
+				feasible++;
+		}
+
+		if (feasible < feasibleTarget * population.size()) {
+			penaltyWeight *= penaltyFactor;
+		} else {
+			penaltyWeight /= penaltyFactor;
+		}
+	}
+
+	/**
+	 * Evaluates the fitness of a chromosome only as far as needed to decide
+	 * whether it exceeds a threshold. The value returned is either the exact
+	 * fitness or an upper bound of it which is strictly below the threshold.
+	 * By default the exact fitness is always computed.
+	 * 
+	 * @param chromosome
+	 *            The genotype being considered for fitness evaluation.
+	 * @param threshold
+	 *            The fitness the chromosome must exceed to be of interest.
+	 * @return The fitness value, or a bound below the threshold.
+	 */
+	protected Double boundedFitness(Chromosome chromosome, double threshold) {
+		return fitness(chromosome);
+	}
+
+	/**
+	 * Gives the cached fitness of a chromosome, calling
+	 * {@link #boundedFitness} if the chromosome was modified since its last
+	 * evaluation. The value cached may thus be a bound below the threshold,
+	 * in which case the chromosome is marked as {@link Chromosome#isPruned
+	 * pruned} and {@link #cachedFitness(Chromosome)} evaluates it exactly if
+	 * ever asked for its fitness.
+	 * 
+	 * @param chromosome
+	 *            The genotype being considered for fitness evaluation.
+	 * @param threshold
+	 *            The fitness the chromosome must exceed to be of interest.
+	 * @return The fitness value, or a bound below the threshold.
+	 */
+	protected double cachedFitness(Chromosome chromosome, double threshold) {
+		if (chromosome.fitness == null) {
+			chromosome.fitness = boundedFitness(chromosome, threshold);
+			chromosome.bounded = chromosome.fitness < threshold;
+		}
+		return penalized(chromosome, chromosome.fitness);
+	}
+
 	/**
 	 * Mutates a given locus of the chromosome. This method should be preferably
 	 * called with an expected frequency determined by the {@link #mutationRate}.
 	 * 
-	 * @param chromosome
-	 *            The genotype being mutated.
-	 * @param locus
-	 *            The position in the genotype being mutated.
+	 * @param chromosome
+	 *            The genotype being mutated.
+	 * @param locus
+	 *            The position in the genotype being mutated.
+	 */
+	protected abstract void mutateGene(Chromosome chromosome, Integer locus);
+
+	/**
+	 * Walks from a chromosome toward another one, changing one differing
+	 * locus at a time, and returns the best chromosome found strictly between
+	 * them. By default no path relinking is performed.
+	 * 
+	 * @param source
+	 *            The chromosome the path starts from.
+	 * @param target
+	 *            The chromosome guiding the path.
+	 * @return The best intermediate chromosome, or null if there is none.
+	 */
+	protected Chromosome pathRelink(Chromosome source, Chromosome target) {
+		return null;
+	}
+
+	/**
+	 * The constructor for the GA class.
+	 * 
+	 * @param objFunction
+	 *            The objective function being optimized.
+	 * @param generations
+	 *            Number of generations to be executed.
+	 * @param popSize
+	 *            Population size.
+	 * @param mutationRate
+	 *            The mutation rate.
+	 */
+	public AbstractGA(Evaluator<F> objFunction, Integer timeToRun, Integer popSize, Double mutationRate) {
+		this.ObjFunction = objFunction;
+		this.timeToRun = timeToRun;
+		this.popSize = popSize;
+		this.chromosomeSize = this.ObjFunction.getDomainSize();
+		this.mutationRate = mutationRate;
+
+		this.constraintCount = this.ObjFunction.getConstraintCount();
+		this.capacities = this.ObjFunction.getCapacities();
+		double[][] weights = this.ObjFunction.getConstraintWeights();
+		this.elementWeights = new double[chromosomeSize * constraintCount];
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			for (int r = 0; r < constraintCount; r++) {
+				elementWeights[locus * constraintCount + r] = weights[r][locus];
+			}
+		}
+	}
+
+	/**
+	 * The GA mainframe. It starts by initializing a population of chromosomes.
+	 * It then enters a generational loop, in which each generation goes the
+	 * following steps: parent selection, crossover, mutation, population update
+	 * and best solution update.
+	 * 
+	 * @return The best feasible solution obtained throughout all iterations.
+	 */
+	public Population population;
+	
+	public Solution<F> solve() {
+
+		/* starts the initial population */
+		//population = initializePopulation();
+		enterPhase("initialization");
+		population = initialPopulation();
+		evaluateBatch(population);
+
+		initializeElite(population);
+		bestChromosome = null;
+		bestSol = null;
+		updateBest(population);
+		if (verbose)
+			System.out.println("(Gen. " + 0 + ") BestSol = " + bestSol);
+		publishImprovement(0);
+
+		/*
+		 * enters the main loop and repeats until a given number of generations
+		 */
+		long startTime = System.currentTimeMillis();
+        long endTime = startTime + timeToRun;
+		int g;
+		for (g = 1; true; g++) {
+			if (g > maxGenerations || System.currentTimeMillis() > endTime)
+                break;
+			enterPhase("selection");
+			Population parents = selectParents(population, rng);
+
+			enterPhase("crossover");
+			Population offsprings = crossoverMethod == CrossoverMethod.UNIFORM
+					? uniformCrossover(parents, uniformBias, rng)
+					: crossover(parents, rng);
+			
+			enterPhase("mutation");
+			Population mutants = mutate(offsprings);
+
+			enterPhase("replacement");
+			evaluateBatch(mutants);
+
+			Population newpopulation = selectPopulation(mutants);
+
+			population = newpopulation;
+
+			if (relinkInterval > 0 && g % relinkInterval == 0) {
+				enterPhase("relinking");
+				relinkElite(population);
+				enterPhase("replacement");
+			}
+
+			if (penaltyMode)
+				adaptPenalty(population);
+
+			if (updateBest(population)) {
+				if (verbose)
+					System.out.println("(Gen. " + g + ") BestSol = " + bestSol);
+				publishImprovement(g);
+			}
+
+			publishGeneration(g);
+
+			migrate(population, g);
+
+		}
+
+		publishResult(g - 1, System.currentTimeMillis() - startTime);
+		if (profiler != null && verbose)
+			profiler.report(System.out);
+
+		return bestSol;
+	}
+
+	/**
+	 * Takes the best chromosome of the {@link #elite} archive as
+	 * {@link #bestChromosome}, and its decoding as {@link #bestSol} if it is
+	 * better. While no feasible chromosome has been found the archive is
+	 * empty, and the best member of the population stands in for it; the
+	 * first feasible chromosome then replaces it whatever its fitness.
+	 * 
+	 * @param population
+	 *            The current population.
+	 * @return true if a feasible chromosome improved {@link #bestSol}.
+	 */
+	protected boolean updateBest(Population population) {
+
+		Chromosome best = elite.best();
+		if (best == null) {
+			bestChromosome = getBestChromosome(population);
+			bestSol = decode(bestChromosome);
+			return false;
+		}
+
+		boolean improved = bestSol == null || !bestChromosome.isFeasible() || cachedFitness(best) > bestSol.cost;
+		bestChromosome = best;
+		if (improved)
+			bestSol = decode(best);
+		return improved;
+	}
+
+	/**
+	 * Exchanges solutions with other solvers running alongside, once per
+	 * generation. The default does nothing; a cooperative GA may share its
+	 * {@link #bestSol} and bring foreign solutions into the population.
+	 * 
+	 * @param population
+	 *            The current population, which may be modified.
+	 * @param generation
+	 *            The generation just completed.
+	 */
+	protected void migrate(Population population, long generation) {
+	}
+
+	/**
+	 * Decorates the objective function with a {@link ProfilingEvaluator},
+	 * which attributes the evaluations of the next runs to the steps of the
+	 * generations and reports them at the end of each run (if
+	 * {@link #verbose}). Calling it again returns the same profiler.
+	 * 
+	 * @return The profiler.
+	 */
+	public ProfilingEvaluator<F> enableProfiling() {
+		if (profiler == null) {
+			profiler = new ProfilingEvaluator<F>(ObjFunction);
+			ObjFunction = profiler;
+		}
+		return profiler;
+	}
+
+	/**
+	 * Attributes the following evaluations to a phase of the run, when they
+	 * are profiled.
+	 * 
+	 * @param name
+	 *            The name of the phase.
+	 */
+	protected void enterPhase(String name) {
+		if (profiler != null)
+			profiler.enterPhase(name);
+	}
+
+	public void setCrossoverMethod(CrossoverMethod crossoverMethod) {
+		this.crossoverMethod = crossoverMethod;
+	}
+
+	public void setUniformBias(double uniformBias) {
+		this.uniformBias = uniformBias;
+	}
+
+	public void setSelectionMethod(SelectionMethod selectionMethod) {
+		this.selectionMethod = selectionMethod;
+	}
+
+	public void setTournamentSize(int tournamentSize) {
+		this.tournamentSize = tournamentSize;
+	}
+
+	public void setBoundPruning(boolean boundPruning) {
+		this.boundPruning = boundPruning;
+	}
+
+	public void setEliteSize(int eliteSize) {
+		this.eliteSize = eliteSize;
+	}
+
+	public void setRelinkInterval(int relinkInterval) {
+		this.relinkInterval = relinkInterval;
+	}
+
+	public void setPenaltyMode(boolean penaltyMode) {
+		this.penaltyMode = penaltyMode;
+	}
+
+	public void setSeed(long seed) {
+		rng.setSeed(seed);
+	}
+
+	public void setMaxGenerations(long maxGenerations) {
+		this.maxGenerations = maxGenerations;
+	}
+
+	/**
+	 * Sets the stream to which the progress of the next runs is published.
+	 * 
+	 * @param events
+	 *            The event stream, or null for no events.
+	 */
+	public void setEventStream(EventStream events) {
+		this.events = events;
+	}
+
+	/**
+	 * Publishes an "improvement" event with the new {@link #bestSol}.
+	 * 
+	 * @param generation
+	 *            The generation (or step) in which the solution was found.
+	 */
+	protected void publishImprovement(long generation) {
+		if (events != null && events.isListening())
+			events.publish("improvement", "gen", generation, "cost", bestSol.cost, "weight", bestSol.weigth,
+					"elements", bestSol);
+	}
+
+	/**
+	 * Publishes a "generation" event with the best, mean and worst fitness of
+	 * the current population. Nothing is computed when nobody is listening.
+	 * 
+	 * @param generation
+	 *            The generation that has just ended.
+	 */
+	protected void publishGeneration(long generation) {
+
+		if (events == null || !events.isListening())
+			return;
+
+		double best = Double.NEGATIVE_INFINITY, worst = Double.POSITIVE_INFINITY, sum = 0.0;
+		for (Chromosome c : population) {
+			double fitness = cachedFitness(c);
+			best = Math.max(best, fitness);
+			worst = Math.min(worst, fitness);
+			sum += fitness;
+		}
+		events.publish("generation", "gen", generation, "best", best, "mean", sum / population.size(), "worst",
+				worst, "incumbent", bestSol.cost);
+	}
+
+	/**
+	 * Publishes a "result" event with the final {@link #bestSol}.
+	 * 
+	 * @param generations
+	 *            The number of generations (or steps) performed.
+	 * @param elapsed
+	 *            The running time, in milliseconds.
+	 */
+	protected void publishResult(long generations, long elapsed) {
+		if (events != null)
+			events.publish("result", "generations", generations, "elapsedMs", elapsed, "cost", bestSol.cost,
+					"weight", bestSol.weigth, "elements", bestSol);
+	}
+
+	/**
+	 * Starts a new {@link #elite} archive with the chromosomes of the initial
+	 * population.
+	 * 
+	 * @param population
+	 *            The initial population.
+	 */
+	protected void initializeElite(Population population) {
+
+		elite = new EliteArchive<Chromosome>(eliteSize);
+		for (Chromosome c : population) {
+			if (c.isFeasible())
+				elite.offer(c, cachedFitness(c));
+		}
+	}
+
+	/**
+	 * The path relinking step: relinks two distinct chromosomes randomly
+	 * taken from the {@link #elite} archive, in both directions, offering the
+	 * resulting chromosomes to the archive and letting them replace the worst
+	 * chromosomes of the population when they are better.
+	 * 
+	 * @param population
+	 *            The current population.
 	 */
-	protected abstract void mutateGene(Chromosome chromosome, Integer locus);
+	protected void relinkElite(Population population) {
+
+		if (elite.size() < 2)
+			return;
+
+		int first = rng.nextInt(elite.size());
+		int second = rng.nextInt(elite.size() - 1);
+		if (second >= first)
+			second++;
+		Chromosome a = elite.get(first);
+		Chromosome b = elite.get(second);
+
+		for (Chromosome relinked : Arrays.asList(pathRelink(a, b), pathRelink(b, a))) {
+			if (relinked == null)
+				continue;
+			double fitness = cachedFitness(relinked);
+			elite.offer(relinked, fitness);
+			Chromosome worse = getWorseChromosome(population);
+			if (cachedFitness(worse) < fitness) {
+				population.remove(worse);
+				population.add(relinked);
+			}
+		}
+	}
 
 	/**
-	 * The constructor for the GA class.
+	 * Gives the solutions of the {@link #elite} archive of the last run,
+	 * ranked from the best to the worst.
 	 * 
-	 * @param objFunction
-	 *            The objective function being optimized.
-	 * @param generations
-	 *            Number of generations to be executed.
-	 * @param popSize
-	 *            Population size.
-	 * @param mutationRate
-	 *            The mutation rate.
+	 * @return The best distinct solutions found.
 	 */
-	public AbstractGA(Evaluator<F> objFunction, Integer timeToRun, Integer popSize, Double mutationRate) {
-		this.ObjFunction = objFunction;
-		this.timeToRun = timeToRun;
-		this.popSize = popSize;
-		this.chromosomeSize = this.ObjFunction.getDomainSize();
-		this.mutationRate = mutationRate;
+	public List<Solution<F>> getEliteSolutions() {
+
+		List<Solution<F>> solutions = new ArrayList<Solution<F>>();
+		if (elite != null) {
+			for (Chromosome c : elite.items()) {
+				solutions.add(decode(c));
+			}
+		}
+
+		return solutions;
 	}
 
 	/**
-	 * The GA mainframe. It starts by initializing a population of chromosomes.
-	 * It then enters a generational loop, in which each generation goes the
-	 * following steps: parent selection, crossover, mutation, population update
-	 * and best solution update.
-	 * 
-	 * @return The best feasible solution obtained throughout all iterations.
+	 * Saves the current {@link #population}, normally the final population of
+	 * the last run, to a binary snapshot, which {@link #loadSnapshot} can use
+	 * for warm starting another run. The snapshot holds a header (magic
+	 * number, version, fingerprint of the instance, chromosome size,
+	 * population size and whether the {@link #penaltyMode} was on, that is,
+	 * whether the chromosomes may be infeasible) followed, for each
+	 * chromosome, by its genes packed 64 to a long, its fitness (NaN if
+	 * unknown) and its weight. The genes are
+	 * assumed binary, as everywhere else in the knapsack handling.
+	 *
+	 * @param filename
+	 *            Name of the snapshot file.
+	 * @throws IOException
+	 *             If the file cannot be written.
 	 */
-	public Population population;
-	
-	public Solution<F> solve() {
+	public void saveSnapshot(String filename) throws IOException {
 
-		/* starts the initial population */
-		//population = initializePopulation();
-		population = initializePopulationLatinHypercube();
+		if (population == null)
+			throw new IllegalStateException("There is no population to save");
 
-		bestChromosome = getBestChromosome(population);
-		bestSol = decode(bestChromosome);
-		System.out.println("(Gen. " + 0 + ") BestSol = " + bestSol);
+		int words = (chromosomeSize + 63) >>> 6;
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(ObjFunction.getFingerprint());
+			out.writeInt(chromosomeSize);
+			out.writeInt(population.size());
+			out.writeBoolean(penaltyMode);
 
-		/*
-		 * enters the main loop and repeats until a given number of generations
-		 */
-		long startTime = System.currentTimeMillis();
-        long endTime = startTime + timeToRun;
-		for (int g = 1; true; g++) {
-			if (System.currentTimeMillis() > endTime)
-                break;
-			Population parents = selectParents(population);
+			for (Chromosome c : population) {
+				long[] packed = c.getPacked();
+				for (int w = 0; w < words; w++) {
+					out.writeLong(packed[w]);
+				}
+				/* a pruned chromosome caches just a bound */
+				Double f = c.isPruned() ? fitness(c) : c.fitness;
+				out.writeDouble(f == null ? Double.NaN : f);
+				out.writeInt(c.GetCurrentPeso());
+			}
+		}
+	}
 
-			Population offsprings = uniformCrossover(parents, 0.5);
-			//Population offsprings = crossover(parents);
-			
-			Population mutants = mutate(offsprings);
+	/**
+	 * Loads a snapshot written by {@link #saveSnapshot}, whose chromosomes
+	 * become the initial population of the next call to {@link #solve}.
+	 *
+	 * When the fingerprint of the snapshot matches the instance, the saved
+	 * fitness values are reused and the chromosomes are not evaluated again.
+	 * Otherwise the instance has changed: only the genes are kept, and the
+	 * chromosomes that became infeasible are discarded. Infeasible
+	 * chromosomes of a snapshot saved in {@link #penaltyMode} are discarded as
+	 * well when the mode is off. The population is completed with random
+	 * chromosomes, or truncated to its best ones, to reach {@link #popSize}.
+	 *
+	 * @param filename
+	 *            Name of the snapshot file.
+	 * @return The number of chromosomes taken from the snapshot.
+	 * @throws IOException
+	 *             If the file cannot be read, is not a snapshot of the current
+	 *             version, or was taken on an instance of another size.
+	 */
+	public int loadSnapshot(String filename) throws IOException {
 
-			Population newpopulation = selectPopulation(mutants);
+		Population loaded = new Population();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException(filename + " is not a population snapshot");
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION)
+				throw new IOException("Unsupported snapshot version " + version + " in " + filename);
+			boolean sameInstance = in.readLong() == ObjFunction.getFingerprint();
+			int size = in.readInt();
+			if (size != chromosomeSize)
+				throw new IOException("Snapshot chromosome size " + size + " differs from the domain size "
+						+ chromosomeSize);
+			int count = in.readInt();
+			boolean mayBeInfeasible = in.readBoolean();
+			boolean discardInfeasible = !penaltyMode && (mayBeInfeasible || !sameInstance);
 
-			population = newpopulation;
+			int words = (chromosomeSize + 63) >>> 6;
+			for (int k = 0; k < count; k++) {
+				long[] packed = new long[words];
+				for (int w = 0; w < words; w++) {
+					packed[w] = in.readLong();
+				}
+				double fitness = in.readDouble();
+				int peso = in.readInt();
 
-			bestChromosome = getBestChromosome(population);
+				Chromosome c = new Chromosome();
+				c.fill(packed);
 
-			if (fitness(bestChromosome) > bestSol.cost) {
-				bestSol = decode(bestChromosome);
-				if (verbose)
-					System.out.println("(Gen. " + g + ") BestSol = " + bestSol);
+				if (discardInfeasible && !c.isFeasible())
+					continue;
+				if (sameInstance) {
+					if (c.GetCurrentPeso() != peso)
+						throw new IOException("Corrupted snapshot " + filename + ": weight mismatch");
+					if (!Double.isNaN(fitness))
+						c.fitness = fitness;
+				}
+				loaded.add(c);
 			}
+		}
 
+		int taken = Math.min(loaded.size(), popSize);
+		if (loaded.size() > popSize) {
+			double[] fitness = new double[loaded.size()];
+			Integer[] order = new Integer[loaded.size()];
+			for (int i = 0; i < order.length; i++) {
+				fitness[i] = cachedFitness(loaded.get(i));
+				order[i] = i;
+			}
+			Arrays.sort(order, (i, j) -> Double.compare(fitness[j], fitness[i]));
+			Population best = new Population();
+			for (int i = 0; i < popSize; i++) {
+				best.add(loaded.get(order[i]));
+			}
+			loaded = best;
+		}
+		while (loaded.size() < popSize) {
+			loaded.add(generateRandomChromosome());
 		}
 
-		return bestSol;
+		seedPopulation = loaded;
+		return taken;
 	}
 
 	/**
@@ -232,6 +1277,18 @@ public abstract class AbstractGA<G extends Number, F> {
 	
 	protected abstract Population initializePopulationLatinHypercube();
 
+	/**
+	 * Gives the initial population of a run: the one loaded by
+	 * {@link #loadSnapshot}, if any, or a Latin hypercube sample.
+	 * 
+	 * @return A population of chromosomes.
+	 */
+	protected Population initialPopulation() {
+		Population initial = seedPopulation;
+		seedPopulation = null;
+		return initial != null ? initial : initializePopulationLatinHypercube();
+	}
+
 	/**
 	 * Given a population of chromosome, takes the best chromosome according to
 	 * the fitness evaluation.
@@ -245,7 +1302,7 @@ public abstract class AbstractGA<G extends Number, F> {
 		double bestFitness = Double.NEGATIVE_INFINITY;
 		Chromosome bestChromosome = null;
 		for (Chromosome c : population) {
-			double fitness = fitness(c);
+			double fitness = cachedFitness(c);
 			if (fitness > bestFitness) {
 				bestFitness = fitness;
 				bestChromosome = c;
@@ -268,7 +1325,7 @@ public abstract class AbstractGA<G extends Number, F> {
 		double worseFitness = Double.POSITIVE_INFINITY;
 		Chromosome worseChromosome = null;
 		for (Chromosome c : population) {
-			double fitness = fitness(c);
+			double fitness = cachedFitness(c);
 			if (fitness < worseFitness) {
 				worseFitness = fitness;
 				worseChromosome = c;
@@ -279,35 +1336,244 @@ public abstract class AbstractGA<G extends Number, F> {
 	}
 
 	/**
-	 * Selection of parents for crossover using the tournament method. Given a
-	 * population of chromosomes, randomly takes two chromosomes and compare
-	 * them by their fitness. The best one is selected as parent. Repeat until
-	 * the number of selected parents is equal to {@link #popSize}.
+	 * Selection of parents for crossover. The fitness of the population is
+	 * gathered once into a primitive array, and the parents are then drawn
+	 * according to {@link #selectionMethod} without any further evaluation,
+	 * until the number of selected parents is equal to {@link #popSize}.
+	 * 
+	 * @param population
+	 *            The current population.
+	 * @param random
+	 *            The generator of the random choices.
+	 * @return The selected parents for performing crossover.
+	 */
+	protected Population selectParents(Population population, Random random) {
+
+		double[] fitness = new double[population.size()];
+		for (int i = 0; i < fitness.length; i++) {
+			fitness[i] = cachedFitness(population.get(i));
+		}
+
+		switch (selectionMethod) {
+		case RANK:
+			return selectParentsByRank(population, fitness, random);
+		case STOCHASTIC_UNIVERSAL:
+			return selectParentsByUniversalSampling(population, fitness, random);
+		case ROULETTE:
+			return selectParentsByRoulette(population, fitness, random);
+		default:
+			return selectParentsByTournament(population, fitness, random);
+		}
+
+	}
+
+	/**
+	 * Tournament selection. Randomly takes {@link #tournamentSize}
+	 * chromosomes and compare them by their fitness. The best one is selected
+	 * as parent.
+	 * 
+	 * @param population
+	 *            The current population.
+	 * @param fitness
+	 *            The fitness of each chromosome of the population.
+	 * @param random
+	 *            The generator of the random choices.
+	 * @return The selected parents for performing crossover.
+	 */
+	protected Population selectParentsByTournament(Population population, double[] fitness, Random random) {
+
+		Population parents = new Population();
+
+		while (parents.size() < popSize) {
+			int winner = random.nextInt(fitness.length);
+			for (int t = 1; t < tournamentSize; t++) {
+				int challenger = random.nextInt(fitness.length);
+				if (!(fitness[winner] > fitness[challenger])) {
+					winner = challenger;
+				}
+			}
+			parents.add(population.get(winner));
+		}
+
+		return parents;
+
+	}
+
+	/**
+	 * Linear ranking selection. The chromosomes are sorted by fitness and the
+	 * chromosome of rank r (0 being the worst) receives the weight
+	 * (2 - s) + 2.(s - 1).r / (P - 1), s being the {@link #rankPressure}. The
+	 * parents are drawn by binary search over the prefix sums of the weights.
+	 * 
+	 * @param population
+	 *            The current population.
+	 * @param fitness
+	 *            The fitness of each chromosome of the population.
+	 * @param random
+	 *            The generator of the random choices.
+	 * @return The selected parents for performing crossover.
+	 */
+	protected Population selectParentsByRank(Population population, double[] fitness, Random random) {
+
+		int size = fitness.length;
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> Double.compare(fitness[i], fitness[j]));
+
+		double[] prefix = new double[size];
+		double sum = 0.0;
+		for (int r = 0; r < size; r++) {
+			sum += (2.0 - rankPressure) + (size > 1 ? 2.0 * (rankPressure - 1.0) * r / (size - 1) : 0.0);
+			prefix[r] = sum;
+		}
+
+		Population parents = new Population();
+		while (parents.size() < popSize) {
+			int r = Arrays.binarySearch(prefix, random.nextDouble() * sum);
+			r = r < 0 ? Math.min(-r - 1, size - 1) : r;
+			parents.add(population.get(order[r]));
+		}
+
+		return parents;
+
+	}
+
+	/**
+	 * Stochastic universal sampling. A single random offset places
+	 * {@link #popSize} equally spaced pointers over the prefix sums of the
+	 * fitness proportional weights (see {@link #proportionalWeights}), which
+	 * are all visited in one pass.
 	 * 
 	 * @param population
 	 *            The current population.
+	 * @param fitness
+	 *            The fitness of each chromosome of the population.
+	 * @param random
+	 *            The generator of the random choices.
 	 * @return The selected parents for performing crossover.
 	 */
-	protected Population selectParents(Population population) {
+	protected Population selectParentsByUniversalSampling(Population population, double[] fitness,
+			Random random) {
+
+		double[] weights = proportionalWeights(fitness);
+		double sum = 0.0;
+		for (double w : weights) {
+			sum += w;
+		}
+
+		double step = sum / popSize;
+		double pointer = random.nextDouble() * step;
+		double prefix = weights[0];
+		int i = 0;
 
 		Population parents = new Population();
-		
 		while (parents.size() < popSize) {
-			int index1 = rng.nextInt(popSize);
-			Chromosome parent1 = population.get(index1);
-			int index2 = rng.nextInt(popSize);
-			Chromosome parent2 = population.get(index2);
-			if (fitness(parent1) > fitness(parent2)) {
-				parents.add(parent1);
+			while (prefix <= pointer && i < weights.length - 1) {
+				prefix += weights[++i];
+			}
+			parents.add(population.get(i));
+			pointer += step;
+		}
+
+		// keeps the parents pairing random, since the pointers are sorted
+		Collections.shuffle(parents, random);
+
+		return parents;
+
+	}
+
+	/**
+	 * Roulette wheel selection. An alias table (Vose's method) is built in
+	 * O(P) over the fitness proportional weights (see
+	 * {@link #proportionalWeights}), so that each parent is drawn in O(1).
+	 * 
+	 * @param population
+	 *            The current population.
+	 * @param fitness
+	 *            The fitness of each chromosome of the population.
+	 * @param random
+	 *            The generator of the random choices.
+	 * @return The selected parents for performing crossover.
+	 */
+	protected Population selectParentsByRoulette(Population population, double[] fitness, Random random) {
+
+		double[] weights = proportionalWeights(fitness);
+		int size = weights.length;
+		double sum = 0.0;
+		for (double w : weights) {
+			sum += w;
+		}
+
+		double[] probability = new double[size];
+		int[] alias = new int[size];
+		int[] small = new int[size];
+		int[] large = new int[size];
+		int nSmall = 0, nLarge = 0;
+
+		for (int i = 0; i < size; i++) {
+			probability[i] = weights[i] * size / sum;
+			if (probability[i] < 1.0) {
+				small[nSmall++] = i;
+			} else {
+				large[nLarge++] = i;
+			}
+		}
+		while (nSmall > 0 && nLarge > 0) {
+			int less = small[--nSmall];
+			int more = large[--nLarge];
+			alias[less] = more;
+			probability[more] = (probability[more] + probability[less]) - 1.0;
+			if (probability[more] < 1.0) {
+				small[nSmall++] = more;
 			} else {
-				parents.add(parent2);
+				large[nLarge++] = more;
 			}
 		}
+		while (nLarge > 0) {
+			probability[large[--nLarge]] = 1.0;
+		}
+		while (nSmall > 0) {
+			probability[small[--nSmall]] = 1.0;
+		}
+
+		Population parents = new Population();
+		while (parents.size() < popSize) {
+			int column = random.nextInt(size);
+			parents.add(population.get(random.nextDouble() < probability[column] ? column : alias[column]));
+		}
 
 		return parents;
 
 	}
 
+	/**
+	 * Turns fitness values, which may be zero or negative, into selection
+	 * weights by subtracting the worst fitness of the population. If all the
+	 * chromosomes have the same fitness, they all receive the same weight.
+	 * 
+	 * @param fitness
+	 *            The fitness of each chromosome of the population.
+	 * @return The non-negative weight of each chromosome.
+	 */
+	protected double[] proportionalWeights(double[] fitness) {
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double f : fitness) {
+			min = Math.min(min, f);
+			max = Math.max(max, f);
+		}
+
+		double[] weights = new double[fitness.length];
+		for (int i = 0; i < fitness.length; i++) {
+			weights[i] = max > min ? fitness[i] - min : 1.0;
+		}
+
+		return weights;
+	}
+
 	/**
 	 * The crossover step takes the parents generated by {@link #selectParents}
 	 * and recombine their genes to generate new chromosomes (offsprings). The
@@ -323,99 +1589,65 @@ public abstract class AbstractGA<G extends Number, F> {
 	 * 
 	 * @param parents
 	 *            The selected parents for crossover.
+	 * @param random
+	 *            The generator of the random choices.
 	 * @return The resulting offsprings.
 	 */
-	protected Population crossover(Population parents) {
+	protected Population crossover(Population parents, Random random) {
 
 		Population offsprings = new Population();
-		
-		Double pesos[] = ObjFunction.getPesos();
-		int pesoMaximo = ObjFunction.getPesoMax();
-		
+
 		for (int i = 0; i < popSize; i = i + 2) {
 
 			Chromosome parent1 = parents.get(i);
 			Chromosome parent2 = parents.get(i + 1);
 
-			int crosspoint1 = rng.nextInt(chromosomeSize + 1);
-			int crosspoint2 = crosspoint1 + rng.nextInt((chromosomeSize + 1) - crosspoint1);
+			int crosspoint1 = random.nextInt(chromosomeSize + 1);
+			int crosspoint2 = crosspoint1 + random.nextInt((chromosomeSize + 1) - crosspoint1);
 
-			Chromosome offspring1 = new Chromosome();
-			Chromosome offspring2 = new Chromosome();
-			
-	        int pesoOffspring1 = 0;
-	        int pesoOffspring2 = 0;
-
-			for (int j = 0; j < chromosomeSize; j++) {
-				
-	            Integer geneToAddFrom1 = (Integer) parent1.get(j);
-	            Integer geneToAddFrom2 = (Integer) parent2.get(j);
-				
-				if (j >= crosspoint1 && j < crosspoint2) {
-					
-					//Add gene2 ao offspring1 se possivel, senao add 0
-					if(geneToAddFrom2 == 1) {
-						if(pesoOffspring1 + pesos[j] <= pesoMaximo) {
-							offspring1.add((G) geneToAddFrom2);
-							pesoOffspring1 += pesos[j];
-						} else {
-							offspring1.add((G) ((Integer) 0));
-						}
-					} else {
-						offspring1.add((G) geneToAddFrom2);						
-					}
-					
-					//Add gene1 ao offspring2 se possivel, senao add 0
-					if(geneToAddFrom1 == 1) {
-						if(pesoOffspring2 + pesos[j] <= pesoMaximo) {
-							offspring2.add((G) geneToAddFrom1);
-							pesoOffspring2 += pesos[j];
-						} else {
-							offspring2.add((G) ((Integer) 0));
-						}
-					} else {
-						offspring2.add((G) geneToAddFrom1);						
-					}
-					
-				} else {
-					//Add gene1 ao offspring1 se possivel, senao add 0
-					if(geneToAddFrom1 == 1) {
-						if(pesoOffspring1 + pesos[j] <= pesoMaximo) {
-							offspring1.add((G) geneToAddFrom1);
-							pesoOffspring1 += pesos[j];
-						} else {
-							offspring1.add((G) ((Integer) 0));
-						}
-					} else {
-						offspring1.add((G) geneToAddFrom1);						
-					}
-					
-					//Add gene2 ao offspring2 se possivel, senao add 0
-					if(geneToAddFrom2 == 1) {
-						if(pesoOffspring2 + pesos[j] <= pesoMaximo) {
-							offspring2.add((G) geneToAddFrom2);
-							pesoOffspring2 += pesos[j];
-						} else {
-							offspring2.add((G) ((Integer) 0));
-						}
-					} else {
-						offspring2.add((G) geneToAddFrom2);						
-					}
-				}
-			}
-			//System.out.println("Peso offspring1: "+pesoOffspring1 + " | peso offspring2: "+pesoOffspring2);
-			offsprings.add(offspring1);
-			offsprings.add(offspring2);
+			offsprings.add(twoPointOffspring(parent1, parent2, crosspoint1, crosspoint2));
+			offsprings.add(twoPointOffspring(parent2, parent1, crosspoint1, crosspoint2));
 		}
 		return offsprings;
 	}
-	
-	
+
+	/**
+	 * Builds an offspring of the 2-point crossover, taking the genes of
+	 * [0, P1) and [P2, n) from the first parent and those of [P1, P2) from the
+	 * second one: the packed parents are blended by {@link #maskedOffspring}
+	 * with a mask covering [P1, P2), a word at a time.
+	 * 
+	 * @param outer
+	 *            The parent providing the genes outside the crosspoints.
+	 * @param inner
+	 *            The parent providing the genes between the crosspoints.
+	 * @param crosspoint1
+	 *            The first point of exchange (P1).
+	 * @param crosspoint2
+	 *            The second point of exchange (P2).
+	 * @return The offspring.
+	 */
+	protected Chromosome twoPointOffspring(Chromosome outer, Chromosome inner, int crosspoint1, int crosspoint2) {
+
+		long[] mask = new long[(chromosomeSize + 63) >>> 6];
+		for (int w = crosspoint1 >>> 6; w < mask.length && (w << 6) < crosspoint2; w++) {
+			long word = -1L;
+			if (w == crosspoint1 >>> 6)
+				word &= -1L << (crosspoint1 & 63);
+			if (w == crosspoint2 >>> 6)
+				word &= (1L << (crosspoint2 & 63)) - 1;
+			mask[w] = word;
+		}
+
+		return maskedOffspring(outer, inner, mask);
+	}
+
 	/**
 	 * The crossover step takes the parents generated by {@link #selectParents}
 	 * and recombine their genes to generate new chromosomes (offsprings). The
-	 * method being used is the 2-point crossover, which randomly selects two
-	 * locus for being the points of exchange (P1 and P2). For example:
+	 * method being used is the uniform crossover, in which a random mask
+	 * decides, for each locus, from which parent the gene is taken. Each
+	 * offspring has its own mask.
 	 * 
 	 * @param parents
 	 *            The selected parents for crossover.
@@ -425,83 +1657,124 @@ public abstract class AbstractGA<G extends Number, F> {
 	 * < 0.5 tende ao parent1
 	 * > 0.5 tende ao parent2
 	 *
+	 * @param random
+	 *            The generator of the random choices.
 	 * @return The resulting offsprings.
 	 */
-	protected Population uniformCrossover(Population parents, Double p) {
+	protected Population uniformCrossover(Population parents, Double p, Random random) {
 		Population offsprings = new Population();
-		
-		Double pesos[] = ObjFunction.getPesos();
-		int pesoMaximo = ObjFunction.getPesoMax();
-		
+
+		long[] mask = new long[(chromosomeSize + 63) >>> 6];
+
 		for (int i = 0; i < popSize; i = i + 2) {
 
 			Chromosome parent1 = parents.get(i);
 			Chromosome parent2 = parents.get(i + 1);
 
-			Chromosome offspring1 = new Chromosome();
-			Chromosome offspring2 = new Chromosome();
-			
-	        int pesoOffspring1 = 0;
-	        int pesoOffspring2 = 0;
-	        
-	        Integer[] mask = new Integer[chromosomeSize];
-	        
-	        for (int j = 0; j < chromosomeSize; j++) {
-	        	double valor = rng.nextDouble();
-	        	if(valor < p) {
-	        		mask[j] = 1;
-	        	} else {
-	        		mask[j] = 0;
-	        	}
-	        }
-
-	        
-	        //Adicionando elementos ao offspring 1
-			for (int j = 0; j < chromosomeSize; j++) {
-	            Integer geneToAdd = mask[j] == 1 ? (Integer) parent2.get(j) : (Integer) parent1.get(j);
-	            if(geneToAdd == 1) {
-	            	if(pesoOffspring1 + pesos[j] <= pesoMaximo) {
-	            		offspring1.add((G) geneToAdd);
-	            		pesoOffspring1 += pesos[j];
-	            	} else {
-	            		offspring1.add((G) ((Integer) 0));
-	            	}
-	            } else {
-	            	offspring1.add((G) geneToAdd);
-	            }
-			}
-			
+			randomMask(mask, p, random);
+			offsprings.add(maskedOffspring(parent1, parent2, mask));
+
 			// Gera outra mask para o offspring2
-	        for (int j = 0; j < chromosomeSize; j++) {
-	        	double valor = rng.nextDouble();
-	        	if(valor < p) {
-	        		mask[j] = 1;
-	        	} else {
-	        		mask[j] = 0;
-	        	}
-	        }
-	        
-	        //Adicionando elementos ao offspring 2
-			for (int j = 0; j < chromosomeSize; j++) {
-	            Integer geneToAdd = mask[j] == 1 ? (Integer) parent2.get(j) : (Integer) parent1.get(j);
-	            if(geneToAdd == 1) {
-	            	if(pesoOffspring2 + pesos[j] <= pesoMaximo) {
-	            		offspring2.add((G) geneToAdd);
-	            		pesoOffspring2 += pesos[j];
-	            	} else {
-	            		offspring2.add((G) ((Integer) 0));
-	            	}
-	            } else {
-	            	offspring2.add((G) geneToAdd);
-	            }
-			}
-			
-			//System.out.println("Peso offspring1: "+pesoOffspring1 + " | peso offspring2: "+pesoOffspring2);
-			offsprings.add(offspring1);
-			offsprings.add(offspring2);
+			randomMask(mask, p, random);
+			offsprings.add(maskedOffspring(parent1, parent2, mask));
 		}
 		return offsprings;
 	}
+
+	/**
+	 * Fills a packed mask of {@link #chromosomeSize} bits, each bit being set
+	 * with probability p. For the unbiased case (p = 0.5) a single
+	 * {@link Random#nextLong()} provides 64 bits of the mask at once.
+	 * 
+	 * @param mask
+	 *            The packed mask, with 64 loci per word.
+	 * @param p
+	 *            The probability of a bit being set.
+	 * @param random
+	 *            The generator of the random choices.
+	 */
+	protected void randomMask(long[] mask, double p, Random random) {
+
+		if (p == 0.5) {
+			for (int w = 0; w < mask.length; w++) {
+				mask[w] = random.nextLong();
+			}
+			return;
+		}
+
+		Arrays.fill(mask, 0L);
+		for (int j = 0; j < chromosomeSize; j++) {
+			if (random.nextDouble() < p) {
+				mask[j >>> 6] |= 1L << j;
+			}
+		}
+	}
+
+	/**
+	 * Builds an offspring taking the gene of the second parent where the mask
+	 * bit is set and the gene of the first parent elsewhere, i.e., the blend
+	 * (parent1 & ~mask) | (parent2 & mask). The knapsack capacity is only
+	 * checked once the offspring is complete (see {@link #repairCapacity}).
+	 * 
+	 * @param parent1
+	 *            The parent chosen where the mask bit is not set.
+	 * @param parent2
+	 *            The parent chosen where the mask bit is set.
+	 * @param mask
+	 *            The packed mask, as filled by {@link #randomMask}.
+	 * @return The offspring.
+	 */
+	protected Chromosome maskedOffspring(Chromosome parent1, Chromosome parent2, long[] mask) {
+
+		long[] genes1 = parent1.getPacked(), genes2 = parent2.getPacked();
+		long[] blend = new long[mask.length];
+		for (int w = 0; w < mask.length; w++) {
+			blend[w] = (genes1[w] & ~mask[w]) | (genes2[w] & mask[w]);
+		}
+
+		Chromosome offspring = new Chromosome();
+		offspring.fill(blend);
+
+		return repairCapacity(offspring);
+	}
+
+	/**
+	 * Makes an offspring respect the knapsack capacities. Nothing is done when
+	 * the offspring is already feasible, which is the common case. Otherwise
+	 * the loci are scanned in order and each selected gene that does not fit
+	 * in the remaining capacities is unset, as the crossover has always done.
+	 * 
+	 * @param offspring
+	 *            The offspring being repaired.
+	 * @return The feasible offspring.
+	 */
+	@SuppressWarnings("unchecked")
+	protected Chromosome repairCapacity(Chromosome offspring) {
+
+		if (penaltyMode || offspring.isFeasible())
+			return offspring;
+
+		double[] running = new double[constraintCount];
+		for (int j = 0; j < chromosomeSize; j++) {
+			if (offspring.get(j).intValue() == 1) {
+				int base = j * constraintCount;
+				boolean fits = true;
+				for (int r = 0; r < constraintCount && fits; r++) {
+					fits = running[r] + elementWeights[base + r] <= capacities[r];
+				}
+				if (fits) {
+					for (int r = 0; r < constraintCount; r++) {
+						running[r] += elementWeights[base + r];
+					}
+				} else {
+					offspring.set(j, (G) ((Integer) 0));
+				}
+			}
+		}
+
+		return offspring;
+	}
+
 	/**
 	 * The mutation step takes the offsprings generated by {@link #crossover}
 	 * and to each possible locus, perform a mutation with the expected
@@ -515,21 +1788,67 @@ public abstract class AbstractGA<G extends Number, F> {
 	protected Population mutate(Population offsprings) {
 
 		for (Chromosome c : offsprings) {
+			mutateChromosome(c, rng);
+		}
+
+		return offsprings;
+	}
+
+	/**
+	 * Mutates each locus of a chromosome with probability
+	 * {@link #mutationRate}. Instead of drawing a random number for every
+	 * locus, the gap to the next mutated locus is sampled from a geometric
+	 * distribution, so only O(n.mutationRate) random draws are needed per
+	 * chromosome. The loci are mutated with exactly the same distribution as
+	 * independent Bernoulli trials.
+	 * 
+	 * @param chromosome
+	 *            The chromosome being mutated.
+	 * @param random
+	 *            The generator of the random choices.
+	 */
+	protected void mutateChromosome(Chromosome chromosome, Random random) {
+
+		if (mutationRate <= 0.0)
+			return;
+
+		if (mutationRate >= 1.0) {
 			for (int locus = 0; locus < chromosomeSize; locus++) {
-				if (rng.nextDouble() < mutationRate) {
-					mutateGene(c, locus);
-				}
+				mutateGene(chromosome, locus);
 			}
+			return;
 		}
 
-		return offsprings;
+		double logComplement = Math.log1p(-mutationRate);
+		long locus = geometricGap(logComplement, random);
+		while (locus < chromosomeSize) {
+			mutateGene(chromosome, (int) locus);
+			locus += 1 + geometricGap(logComplement, random);
+		}
+	}
+
+	/**
+	 * Samples the number of failures before the first success of a sequence
+	 * of Bernoulli trials, i.e., a geometric random variable.
+	 * 
+	 * @param logComplement
+	 *            The value of log(1 - p), p being the success probability.
+	 * @param random
+	 *            The generator of the random choices.
+	 * @return The number of loci to be skipped before the next mutation.
+	 */
+	private long geometricGap(double logComplement, Random random) {
+		double u = 1.0 - random.nextDouble();
+		double gap = Math.floor(Math.log(u) / logComplement);
+		return gap < chromosomeSize ? (long) gap : chromosomeSize;
 	}
 
 	/**
 	 * Updates the population that will be considered for the next GA
-	 * generation. The method used for updating the population is the elitist,
+	 * generation. The offsprings are first offered to the {@link #elite}
+	 * archive. The method used for updating the population is the elitist,
 	 * which simply takes the worse chromosome from the offsprings and replace
-	 * it with the best chromosome from the previous generation.
+	 * it with the best chromosome of the archive.
 	 * 
 	 * @param offsprings
 	 *            The offsprings generated by {@link #crossover}.
@@ -537,10 +1856,16 @@ public abstract class AbstractGA<G extends Number, F> {
 	 */
 	protected Population selectPopulation(Population offsprings) {
 
+		for (Chromosome c : offsprings) {
+			double fitness = cachedFitness(c);
+			if (c.isFeasible())
+				elite.offer(c, fitness);
+		}
+
 		Chromosome worse = getWorseChromosome(offsprings);
-		if (fitness(worse) < fitness(bestChromosome)) {
+		if (cachedFitness(worse) < elite.bestFitness()) {
 			offsprings.remove(worse);
-			offsprings.add(bestChromosome);
+			offsprings.add(elite.best());
 		}
 
 		return offsprings;
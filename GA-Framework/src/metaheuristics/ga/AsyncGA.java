@@ -0,0 +1,318 @@
+package metaheuristics.ga;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import metaheuristics.util.BoundedQueue;
+import solutions.Solution;
+
+/**
+ * Asynchronous steady-state engine for a GA. Instead of the generational
+ * loop of {@link AbstractGA#solve()}, in which every phase waits for the
+ * previous one, the work is split into a pipeline of concurrent stages:
+ *
+ * - breeder threads take a snapshot of the current population, select
+ *   parents from it, recombine them and mutate the offsprings with the
+ *   operators configured in the GA ({@link AbstractGA#selectionMethod},
+ *   {@link AbstractGA#crossoverMethod}, {@link AbstractGA#uniformBias}),
+ *   pushing them into a bounded lock-free queue;
+ * - evaluator threads take the offsprings from that queue and compute their
+ *   fitness, pushing them into a second queue;
+ * - the replacement stage, run by the calling thread, merges each scored
+ *   offspring into the population, replacing the worst chromosome if the
+ *   offspring is better than it.
+ *
+ * There is no generation barrier, so a slow evaluation never holds the
+ * other workers. The GA operators are the ones of the wrapped
+ * {@link AbstractGA}, which must therefore have a thread-safe
+ * {@link AbstractGA#fitness} and {@link AbstractGA#mutateGene}. Each breeder
+ * draws from its own generator, seeded from {@link AbstractGA#rng}, so the
+ * draws of a run are reproducible from the seed of the GA; the interleaving
+ * of the threads is not, and so neither is the outcome of a run.
+ *
+ * @param <G>
+ *            Generic type of the chromosome element (genotype).
+ * @param <F>
+ *            Generic type of the candidate to enter the solution (fenotype).
+ */
+public class AsyncGA<G extends Number, F> {
+
+	/**
+	 * the GA providing the operators and the parameters
+	 */
+	protected final AbstractGA<G, F> ga;
+
+	/**
+	 * the number of threads breeding offsprings
+	 */
+	protected final int breeders;
+
+	/**
+	 * the number of threads evaluating offsprings
+	 */
+	protected final int evaluators;
+
+	/**
+	 * the offsprings waiting for evaluation
+	 */
+	protected final BoundedQueue<AbstractGA<G, F>.Chromosome> bred;
+
+	/**
+	 * the evaluated offsprings waiting for replacement
+	 */
+	protected final BoundedQueue<AbstractGA<G, F>.Chromosome> scored;
+
+	/**
+	 * the current population; slots are replaced as offsprings are merged
+	 */
+	protected AtomicReferenceArray<AbstractGA<G, F>.Chromosome> population;
+
+	/**
+	 * the fitness of the worst chromosome of the population, read by the
+	 * evaluators as the threshold for {@link AbstractGA#boundedFitness}
+	 */
+	protected volatile double worstFitness;
+
+	/**
+	 * flag that tells the workers to stop
+	 */
+	protected volatile boolean stop;
+
+	/**
+	 * the number of offsprings merged into the population by the last run
+	 */
+	protected long merged;
+
+	/**
+	 * the number of offsprings evaluated by the last run
+	 */
+	protected long evaluated;
+
+	/**
+	 * Constructor for the AsyncGA class.
+	 *
+	 * @param ga
+	 *            The GA providing the operators and the parameters (time to
+	 *            run, population size, mutation rate, selection and
+	 *            crossover).
+	 * @param breeders
+	 *            Number of threads breeding offsprings.
+	 * @param evaluators
+	 *            Number of threads evaluating offsprings.
+	 */
+	public AsyncGA(AbstractGA<G, F> ga, int breeders, int evaluators) {
+		this.ga = ga;
+		this.breeders = Math.max(1, breeders);
+		this.evaluators = Math.max(1, evaluators);
+		this.bred = new BoundedQueue<AbstractGA<G, F>.Chromosome>(4 * ga.popSize);
+		this.scored = new BoundedQueue<AbstractGA<G, F>.Chromosome>(4 * ga.popSize);
+	}
+
+	/**
+	 * Constructor for the AsyncGA class, which uses one breeder for every
+	 * three evaluators among the given number of threads, besides the calling
+	 * thread that performs the replacement.
+	 *
+	 * @param ga
+	 *            The GA providing the operators and the parameters.
+	 * @param threads
+	 *            Total number of worker threads.
+	 */
+	public AsyncGA(AbstractGA<G, F> ga, int threads) {
+		this(ga, Math.max(1, threads / 4), Math.max(1, threads - Math.max(1, threads / 4)));
+	}
+
+	/**
+	 * Runs the pipeline until the time to run of the GA expires. The final
+	 * population and best solution are also stored in the wrapped GA.
+	 *
+	 * @return The best feasible solution obtained.
+	 */
+	public Solution<F> solve() {
+
+		long endTime = System.currentTimeMillis() + ga.timeToRun;
+
+		AbstractGA<G, F>.Population initial = ga.initialPopulation();
+		initial.parallelStream().forEach(ga::cachedFitness);
+		population = new AtomicReferenceArray<AbstractGA<G, F>.Chromosome>(initial.size());
+		double[] fitness = new double[initial.size()];
+		for (int i = 0; i < fitness.length; i++) {
+			population.set(i, initial.get(i));
+			fitness[i] = ga.cachedFitness(initial.get(i));
+		}
+
+		int worst = worstSlot(fitness);
+		worstFitness = fitness[worst];
+		ga.initializeElite(initial);
+		ga.bestChromosome = null;
+		ga.bestSol = null;
+		ga.updateBest(initial);
+		if (AbstractGA.verbose)
+			System.out.println("(Offs. " + 0 + ") BestSol = " + ga.bestSol);
+		ga.publishImprovement(0);
+		long startTime = System.currentTimeMillis();
+
+		stop = false;
+		merged = 0;
+		evaluated = 0;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < breeders; t++) {
+			Random random = new Random(ga.rng.nextLong());
+			workers.add(new Thread(() -> breed(random), "ga-breeder-" + t));
+		}
+		for (int t = 0; t < evaluators; t++) {
+			workers.add(new Thread(this::evaluate, "ga-evaluator-" + t));
+		}
+		for (Thread worker : workers) {
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		/* the replacement stage */
+		while (System.currentTimeMillis() <= endTime) {
+			AbstractGA<G, F>.Chromosome offspring = scored.poll();
+			if (offspring == null) {
+				LockSupport.parkNanos(10000);
+				continue;
+			}
+			evaluated++;
+			/* bounded below a past worst fitness, which only grows */
+			if (offspring.isPruned())
+				continue;
+			double f = ga.cachedFitness(offspring);
+			if (f <= fitness[worst])
+				continue;
+
+			population.set(worst, offspring);
+			fitness[worst] = f;
+			merged++;
+			worst = worstSlot(fitness);
+			worstFitness = fitness[worst];
+
+			if (offspring.isFeasible()) {
+				ga.elite.offer(offspring, f);
+				if (ga.updateBest(initial)) {
+					if (AbstractGA.verbose)
+						System.out.println("(Offs. " + evaluated + ") BestSol = " + ga.bestSol);
+					ga.publishImprovement(evaluated);
+				}
+			}
+		}
+
+		stop = true;
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		ga.population = ga.new Population();
+		for (int i = 0; i < population.length(); i++) {
+			ga.population.add(population.get(i));
+		}
+		ga.publishResult(evaluated, System.currentTimeMillis() - startTime);
+
+		return ga.bestSol;
+	}
+
+	/**
+	 * The breeding stage, repeated until the run stops: a batch of
+	 * {@link AbstractGA#popSize} offsprings is bred from a snapshot of the
+	 * population by the selection, crossover and mutation of the GA.
+	 *
+	 * @param random
+	 *            The generator of the breeder.
+	 */
+	protected void breed(Random random) {
+
+		while (!stop) {
+			AbstractGA<G, F>.Population snapshot = ga.new Population();
+			for (int i = 0; i < population.length(); i++) {
+				snapshot.add(population.get(i));
+			}
+
+			AbstractGA<G, F>.Population parents = ga.selectParents(snapshot, random);
+			AbstractGA<G, F>.Population offsprings = ga.crossoverMethod == AbstractGA.CrossoverMethod.UNIFORM
+					? ga.uniformCrossover(parents, ga.uniformBias, random)
+					: ga.crossover(parents, random);
+
+			for (AbstractGA<G, F>.Chromosome offspring : offsprings) {
+				ga.mutateChromosome(offspring, random);
+				while (!bred.offer(offspring)) {
+					if (stop)
+						return;
+					LockSupport.parkNanos(10000);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The evaluation stage: takes bred offsprings and computes their fitness
+	 * until the run stops. With {@link AbstractGA#boundPruning}, offsprings
+	 * that cannot beat the worst chromosome are only bounded.
+	 */
+	protected void evaluate() {
+
+		while (!stop) {
+			AbstractGA<G, F>.Chromosome offspring = bred.poll();
+			if (offspring == null) {
+				LockSupport.parkNanos(10000);
+				continue;
+			}
+
+			if (ga.boundPruning) {
+				ga.cachedFitness(offspring, worstFitness);
+			} else {
+				ga.cachedFitness(offspring);
+			}
+
+			while (!scored.offer(offspring)) {
+				if (stop)
+					return;
+				LockSupport.parkNanos(10000);
+			}
+		}
+	}
+
+	/**
+	 * Finds the slot of the population holding the worst chromosome.
+	 *
+	 * @param fitness
+	 *            The fitness of each slot.
+	 * @return The index of the worst slot.
+	 */
+	private int worstSlot(double[] fitness) {
+		int worst = 0;
+		for (int i = 1; i < fitness.length; i++) {
+			if (fitness[i] < fitness[worst])
+				worst = i;
+		}
+		return worst;
+	}
+
+	/**
+	 * Gives the number of offsprings evaluated by the last run.
+	 *
+	 * @return the number of evaluated offsprings.
+	 */
+	public long getEvaluated() {
+		return evaluated;
+	}
+
+	/**
+	 * Gives the number of offsprings that entered the population in the last
+	 * run.
+	 *
+	 * @return the number of merged offsprings.
+	 */
+	public long getMerged() {
+		return merged;
+	}
+
+}
@@ -0,0 +1,187 @@
+package metaheuristics.ga;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A bounded archive of the best distinct items found by a metaheuristic,
+ * ordered by their (cached) fitness, the best first. Duplicates are detected
+ * through {@link Object#hashCode()} and {@link Object#equals(Object)}, which
+ * for a chromosome compare the genes. Offering an item costs O(log K), K
+ * being the size of the archive, besides the hashing of the item, which is
+ * skipped when the item is not good enough to enter a full archive.
+ *
+ * The archived items must not be modified afterwards.
+ *
+ * @param <T>
+ *            Generic type of the archived items.
+ */
+public class EliteArchive<T> {
+
+	/**
+	 * An archived item and its fitness.
+	 */
+	public static class Entry<T> {
+
+		public final T item;
+
+		public final double fitness;
+
+		/**
+		 * the order of insertion, which breaks ties between equal fitness
+		 */
+		private final long sequence;
+
+		private Entry(T item, double fitness, long sequence) {
+			this.item = item;
+			this.fitness = fitness;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * the maximum number of items in the archive
+	 */
+	protected final int capacity;
+
+	/**
+	 * the entries ordered from the best to the worst fitness; among equal
+	 * fitness the oldest comes first
+	 */
+	protected final TreeSet<Entry<T>> ranking;
+
+	/**
+	 * the entries indexed by item, for detecting duplicates
+	 */
+	protected final Map<T, Entry<T>> index;
+
+	/**
+	 * the number of entries inserted so far
+	 */
+	private long inserted = 0;
+
+	/**
+	 * Constructor for the EliteArchive class.
+	 *
+	 * @param capacity
+	 *            The maximum number of items kept.
+	 */
+	public EliteArchive(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.ranking = new TreeSet<Entry<T>>((a, b) -> a.fitness != b.fitness ? Double.compare(b.fitness, a.fitness)
+				: Long.compare(a.sequence, b.sequence));
+		this.index = new HashMap<T, Entry<T>>();
+	}
+
+	/**
+	 * Offers an item to the archive. The item enters if it is not already
+	 * archived and, when the archive is full, if it is better than the worst
+	 * archived item, which is then discarded.
+	 *
+	 * @param item
+	 *            The item being offered.
+	 * @param fitness
+	 *            The fitness of the item.
+	 * @return true if the item entered the archive.
+	 */
+	public boolean offer(T item, double fitness) {
+
+		if (ranking.size() >= capacity && !(fitness > ranking.last().fitness))
+			return false;
+		if (index.containsKey(item))
+			return false;
+
+		Entry<T> entry = new Entry<T>(item, fitness, inserted++);
+		ranking.add(entry);
+		index.put(item, entry);
+
+		if (ranking.size() > capacity) {
+			Entry<T> worst = ranking.pollLast();
+			index.remove(worst.item);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gives the best archived item.
+	 *
+	 * @return the best item, or null if the archive is empty.
+	 */
+	public T best() {
+		return ranking.isEmpty() ? null : ranking.first().item;
+	}
+
+	/**
+	 * Gives the fitness of the best archived item.
+	 *
+	 * @return the best fitness, or negative infinity if the archive is empty.
+	 */
+	public double bestFitness() {
+		return ranking.isEmpty() ? Double.NEGATIVE_INFINITY : ranking.first().fitness;
+	}
+
+	/**
+	 * Gives the fitness of the worst archived item.
+	 *
+	 * @return the worst fitness, or negative infinity if the archive is empty.
+	 */
+	public double worstFitness() {
+		return ranking.isEmpty() ? Double.NEGATIVE_INFINITY : ranking.last().fitness;
+	}
+
+	/**
+	 * Gives the item of a given rank.
+	 *
+	 * @param rank
+	 *            The rank of the item, 0 being the best.
+	 * @return the item of that rank.
+	 */
+	public T get(int rank) {
+		Iterator<Entry<T>> it = ranking.iterator();
+		for (int r = 0; r < rank; r++) {
+			it.next();
+		}
+		return it.next().item;
+	}
+
+	/**
+	 * Gives the archived entries, from the best to the worst.
+	 *
+	 * @return the ranked entries.
+	 */
+	public List<Entry<T>> entries() {
+		return new ArrayList<Entry<T>>(ranking);
+	}
+
+	/**
+	 * Gives the archived items, from the best to the worst.
+	 *
+	 * @return the ranked items.
+	 */
+	public List<T> items() {
+		List<T> items = new ArrayList<T>(ranking.size());
+		for (Entry<T> e : ranking) {
+			items.add(e.item);
+		}
+		return items;
+	}
+
+	public int size() {
+		return ranking.size();
+	}
+
+	public boolean isEmpty() {
+		return ranking.isEmpty();
+	}
+
+	public void clear() {
+		ranking.clear();
+		index.clear();
+	}
+
+}
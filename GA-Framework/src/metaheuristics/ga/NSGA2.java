@@ -0,0 +1,254 @@
+package metaheuristics.ga;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import solutions.Solution;
+
+/**
+ * Multi-objective GA in the NSGA-II fashion [1] for the trade-off between the
+ * fitness of a chromosome (maximized) and its knapsack weight (minimized).
+ * The chromosomes are generated, recombined and mutated by the operators of
+ * the wrapped {@link AbstractGA}; only the selection of parents and of the
+ * next population changes:
+ *
+ * - the population and its offsprings are sorted into non-dominated fronts,
+ *   which for two objectives takes O(P log P) [2];
+ * - the next population is filled front by front, the last front admitted
+ *   being truncated by crowding distance;
+ * - the parents are chosen by binary tournaments comparing the front rank
+ *   and then the crowding distance.
+ *
+ * The result is the first front of the final population, i.e., a set of
+ * solutions none of which is both more valuable and lighter than another.
+ *
+ * [1] Deb et al. A fast and elitist multiobjective genetic algorithm:
+ * NSGA-II. IEEE Trans Evol Comput (2002) 6(2):182-197.
+ *
+ * [2] Jensen. Reducing the run-time complexity of multiobjective EAs: the
+ * NSGA-II and other algorithms. IEEE Trans Evol Comput (2003) 7(5):503-515.
+ *
+ * @param <G>
+ *            Generic type of the chromosome element (genotype).
+ * @param <F>
+ *            Generic type of the candidate to enter the solution (fenotype).
+ */
+public class NSGA2<G extends Number, F> {
+
+	/**
+	 * the GA providing the operators and the parameters
+	 */
+	protected final AbstractGA<G, F> ga;
+
+	/**
+	 * the front rank of each chromosome of the last sorted population, 0
+	 * being the non-dominated front
+	 */
+	protected int[] rank;
+
+	/**
+	 * the crowding distance of each chromosome of the last sorted population
+	 */
+	protected double[] crowding;
+
+	/**
+	 * Constructor for the NSGA2 class.
+	 *
+	 * @param ga
+	 *            The GA providing the operators and the parameters (time to
+	 *            run, population size, mutation rate, crossover operator).
+	 */
+	public NSGA2(AbstractGA<G, F> ga) {
+		this.ga = ga;
+	}
+
+	/**
+	 * Runs the multi-objective GA until the time to run of the wrapped GA
+	 * expires.
+	 *
+	 * @return The non-dominated solutions of the final population, without
+	 *         duplicates, from the lightest to the heaviest.
+	 */
+	public List<Solution<F>> solve() {
+
+		long endTime = System.currentTimeMillis() + ga.timeToRun;
+
+		AbstractGA<G, F>.Population population = ga.initializePopulationLatinHypercube();
+		sortPopulation(population);
+
+		int g;
+		for (g = 1; System.currentTimeMillis() <= endTime; g++) {
+
+			AbstractGA<G, F>.Population parents = selectParents(population);
+			AbstractGA<G, F>.Population offsprings = ga.crossoverMethod == AbstractGA.CrossoverMethod.UNIFORM
+					? ga.uniformCrossover(parents, ga.uniformBias, ga.rng)
+					: ga.crossover(parents, ga.rng);
+			ga.mutate(offsprings);
+
+			AbstractGA<G, F>.Population merged = ga.new Population();
+			merged.addAll(population);
+			merged.addAll(offsprings);
+			population = selectPopulation(merged, ga.popSize);
+		}
+
+		List<Solution<F>> front = new ArrayList<Solution<F>>();
+		Set<AbstractGA<G, F>.Chromosome> seen = new HashSet<AbstractGA<G, F>.Chromosome>();
+		for (int i = 0; i < population.size(); i++) {
+			if (rank[i] == 0 && seen.add(population.get(i)))
+				front.add(ga.decode(population.get(i)));
+		}
+		front.sort(Comparator.comparingDouble(s -> s.weigth));
+
+		if (AbstractGA.verbose)
+			System.out.println("(Gen. " + (g - 1) + ") Front size = " + front.size());
+
+		return front;
+	}
+
+	/**
+	 * Binary tournament selection under the crowded comparison: the lower
+	 * front rank wins, and between equal ranks the larger crowding distance.
+	 *
+	 * @param population
+	 *            The current population, sorted by {@link #sortPopulation}.
+	 * @return The selected parents for performing crossover.
+	 */
+	protected AbstractGA<G, F>.Population selectParents(AbstractGA<G, F>.Population population) {
+
+		AbstractGA<G, F>.Population parents = ga.new Population();
+		while (parents.size() < ga.popSize) {
+			int a = ga.rng.nextInt(population.size());
+			int b = ga.rng.nextInt(population.size());
+			boolean aWins = rank[a] < rank[b] || (rank[a] == rank[b] && crowding[a] > crowding[b]);
+			parents.add(population.get(aWins ? a : b));
+		}
+
+		return parents;
+	}
+
+	/**
+	 * Selects the next population among the current one and its offsprings:
+	 * whole fronts are taken while they fit, and the chromosomes of the first
+	 * front that does not fit are taken by decreasing crowding distance.
+	 *
+	 * @param merged
+	 *            The current population and its offsprings.
+	 * @param size
+	 *            The size of the next population.
+	 * @return The next population, already sorted by {@link #sortPopulation}.
+	 */
+	protected AbstractGA<G, F>.Population selectPopulation(AbstractGA<G, F>.Population merged, int size) {
+
+		sortPopulation(merged);
+
+		Integer[] order = new Integer[merged.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> rank[i] != rank[j] ? Integer.compare(rank[i], rank[j])
+				: Double.compare(crowding[j], crowding[i]));
+
+		AbstractGA<G, F>.Population next = ga.new Population();
+		for (int k = 0; k < size && k < order.length; k++) {
+			next.add(merged.get(order[k]));
+		}
+
+		sortPopulation(next);
+		return next;
+	}
+
+	/**
+	 * Computes the front rank and the crowding distance of every chromosome
+	 * of a population, storing them in {@link #rank} and {@link #crowding}.
+	 *
+	 * The chromosomes are visited by decreasing fitness (ties by increasing
+	 * weight). Along a front the weight then strictly decreases, so a
+	 * chromosome is dominated by a front if and only if it is dominated by the
+	 * last chromosome added to that front, and the first front not dominating
+	 * it is found by binary search.
+	 *
+	 * @param population
+	 *            The population being sorted.
+	 */
+	protected void sortPopulation(AbstractGA<G, F>.Population population) {
+
+		int size = population.size();
+		double[] cost = new double[size];
+		double[] weight = new double[size];
+		for (int i = 0; i < size; i++) {
+			cost[i] = ga.cachedFitness(population.get(i));
+			weight[i] = population.get(i).GetCurrentPeso();
+		}
+
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (i, j) -> cost[i] != cost[j] ? Double.compare(cost[j], cost[i])
+				: Double.compare(weight[i], weight[j]));
+
+		rank = new int[size];
+		int[] last = new int[size];
+		int nFronts = 0;
+		for (int i : order) {
+			int low = 0, high = nFronts;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				int q = last[mid];
+				boolean dominated = weight[q] < weight[i] || (weight[q] == weight[i] && cost[q] > cost[i]);
+				if (dominated)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			rank[i] = low;
+			last[low] = i;
+			if (low == nFronts)
+				nFronts++;
+		}
+
+		crowding = new double[size];
+		List<List<Integer>> fronts = new ArrayList<List<Integer>>();
+		for (int k = 0; k < nFronts; k++) {
+			fronts.add(new ArrayList<Integer>());
+		}
+		for (int i : order) {
+			fronts.get(rank[i]).add(i);
+		}
+		for (List<Integer> front : fronts) {
+			addCrowding(front, cost);
+			addCrowding(front, weight);
+		}
+	}
+
+	/**
+	 * Adds to the crowding distance of the chromosomes of a front their
+	 * normalized distance along one objective. The extreme chromosomes
+	 * receive an infinite distance.
+	 *
+	 * @param front
+	 *            The indices of the chromosomes of the front.
+	 * @param objective
+	 *            The objective value of each chromosome.
+	 */
+	private void addCrowding(List<Integer> front, double[] objective) {
+
+		Integer[] sorted = front.toArray(new Integer[0]);
+		Arrays.sort(sorted, (i, j) -> Double.compare(objective[i], objective[j]));
+
+		int n = sorted.length;
+		crowding[sorted[0]] = Double.POSITIVE_INFINITY;
+		crowding[sorted[n - 1]] = Double.POSITIVE_INFINITY;
+		double range = objective[sorted[n - 1]] - objective[sorted[0]];
+		if (range <= 0)
+			return;
+		for (int k = 1; k < n - 1; k++) {
+			crowding[sorted[k]] += (objective[sorted[k + 1]] - objective[sorted[k - 1]]) / range;
+		}
+	}
+
+}
@@ -0,0 +1,579 @@
+package metaheuristics.tabu;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import metaheuristics.util.SharedIncumbent;
+import problems.Evaluator;
+import solutions.Solution;
+
+/**
+ * Abstract class for metaheuristic TS (Tabu Search) over subsets of the
+ * domain of an {@link Evaluator} under its knapsack constraints. It considers
+ * the maximization of the objective function.
+ *
+ * The neighbourhood of a selection holds the flips (insertions that fit and
+ * removals) and the swaps of a selected element for an unselected one that
+ * fit. The moves are valued by the same three operations as the move API of
+ * the {@link Evaluator} (insertion, removal and exchange costs), but over the
+ * indices of the domain and against the current selection, so that a
+ * problem can answer them in O(1) from incremental gains (see
+ * {@link #updateGains}). The engine keeps the selection, the knapsack loads
+ * and the tabu memory in primitive arrays: an element flipped at iteration t
+ * stays tabu until iteration t + {@link #tenure}, unless the move leads to a
+ * cost better than the best one of the search (aspiration).
+ *
+ * When {@link #stagnationLimit} iterations go by without improvement, the
+ * search restarts from a perturbation of the best selection, or of the
+ * {@link #incumbent} when it is shared with other solvers.
+ *
+ * @param <E>
+ *            Generic type of the element which composes the solution.
+ */
+public abstract class AbstractTS<E> {
+
+	/**
+	 * flag that indicates whether the code should print more information on
+	 * screen
+	 */
+	public static boolean verbose = true;
+
+	/**
+	 * the objective function being optimized
+	 */
+	protected Evaluator<E> ObjFunction;
+
+	/**
+	 * Time limit, in milliseconds.
+	 */
+	protected int timeToRun;
+
+	/**
+	 * the size of the domain
+	 */
+	protected final int domainSize;
+
+	/**
+	 * the number of knapsack constraints
+	 */
+	protected final int constraintCount;
+
+	/**
+	 * the weights of the elements, the {@link #constraintCount} dimensions of
+	 * each element being contiguous: elementWeights[element * constraintCount
+	 * + dimension]
+	 */
+	protected final double[] elementWeights;
+
+	/**
+	 * the capacity of each knapsack dimension
+	 */
+	protected final double[] capacities;
+
+	/**
+	 * the number of iterations an element stays tabu after being flipped
+	 */
+	protected int tenure;
+
+	/**
+	 * the number of iterations without improvement after which the search
+	 * restarts
+	 */
+	protected int stagnationLimit = 1000;
+
+	/**
+	 * the fraction of the elements flipped when restarting
+	 */
+	protected double perturbation = 0.05;
+
+	/**
+	 * the generator of the random choices
+	 */
+	protected SplittableRandom random = new SplittableRandom(0);
+
+	/**
+	 * the current selection
+	 */
+	protected final boolean[] selected;
+
+	/**
+	 * the load of the current selection in each knapsack dimension
+	 */
+	protected final double[] load;
+
+	/**
+	 * the cost of the current selection
+	 */
+	protected double cost;
+
+	/**
+	 * the iteration until which each element is tabu
+	 */
+	protected final long[] tabuUntil;
+
+	/**
+	 * the current iteration
+	 */
+	protected long iteration;
+
+	/**
+	 * the best selection found
+	 */
+	protected final boolean[] bestSelection;
+
+	/**
+	 * the cost of the best selection found
+	 */
+	protected double bestCost;
+
+	/**
+	 * the selected and unselected elements, gathered at each iteration
+	 */
+	private final int[] inside, outside;
+
+	/**
+	 * the incumbent shared with other solvers, or null when running alone
+	 */
+	protected SharedIncumbent<Solution<E>> incumbent;
+
+	/**
+	 * the name under which the solutions are offered to the incumbent
+	 */
+	protected String incumbentName = "TS";
+
+	/**
+	 * Gives the variation of the cost from inserting an unselected element
+	 * into the current selection.
+	 *
+	 * @param index
+	 *            The element being inserted.
+	 * @return The variation of the cost.
+	 */
+	protected abstract double insertionCost(int index);
+
+	/**
+	 * Gives the variation of the cost from removing a selected element from
+	 * the current selection.
+	 *
+	 * @param index
+	 *            The element being removed.
+	 * @return The variation of the cost.
+	 */
+	protected abstract double removalCost(int index);
+
+	/**
+	 * Gives the variation of the cost from exchanging a selected element for
+	 * an unselected one.
+	 *
+	 * @param in
+	 *            The unselected element entering the selection.
+	 * @param out
+	 *            The selected element leaving the selection.
+	 * @return The variation of the cost.
+	 */
+	protected abstract double exchangeCost(int in, int out);
+
+	/**
+	 * Recomputes the gains of the elements for a new selection.
+	 *
+	 * @param selection
+	 *            The new selection.
+	 * @return The cost of the selection.
+	 */
+	protected abstract double resetGains(boolean[] selection);
+
+	/**
+	 * Updates the gains of the elements after an element has been flipped in
+	 * {@link #selected}.
+	 *
+	 * @param index
+	 *            The element flipped.
+	 */
+	protected abstract void updateGains(int index);
+
+	/**
+	 * Gives the element of the domain at an index.
+	 *
+	 * @param index
+	 *            The index.
+	 * @return The element.
+	 */
+	protected abstract E element(int index);
+
+	/**
+	 * Gives the index of an element of the domain.
+	 *
+	 * @param element
+	 *            The element.
+	 * @return The index.
+	 */
+	protected abstract int index(E element);
+
+	/**
+	 * Constructor for the AbstractTS class.
+	 *
+	 * @param objFunction
+	 *            The objective function being optimized.
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 */
+	public AbstractTS(Evaluator<E> objFunction, Integer timeToRun) {
+		this.ObjFunction = objFunction;
+		this.timeToRun = timeToRun;
+		this.domainSize = objFunction.getDomainSize();
+		this.constraintCount = objFunction.getConstraintCount();
+		this.capacities = objFunction.getCapacities();
+		double[][] weights = objFunction.getConstraintWeights();
+		this.elementWeights = new double[domainSize * constraintCount];
+		for (int i = 0; i < domainSize; i++) {
+			for (int r = 0; r < constraintCount; r++) {
+				elementWeights[i * constraintCount + r] = weights[r][i];
+			}
+		}
+		this.tenure = Math.max(7, domainSize / 20);
+		this.selected = new boolean[domainSize];
+		this.load = new double[constraintCount];
+		this.tabuUntil = new long[domainSize];
+		this.bestSelection = new boolean[domainSize];
+		this.inside = new int[domainSize];
+		this.outside = new int[domainSize];
+	}
+
+	/**
+	 * The TS mainframe. It starts from {@link #initialSelection} and makes
+	 * moves until the time limit, restarting on stagnation.
+	 *
+	 * @return The best feasible solution found.
+	 */
+	public Solution<E> solve() {
+
+		long endTime = System.currentTimeMillis() + timeToRun;
+		reset(initialSelection());
+		keepBest();
+		if (verbose)
+			System.out.println("(Iter. " + 0 + ") BestSol = " + decode(bestSelection, bestCost));
+
+		search(endTime, Long.MAX_VALUE, true);
+
+		return decode(bestSelection, bestCost);
+	}
+
+	/**
+	 * Improves a feasible selection by a short tabu search, without restarts.
+	 * Used as the improvement operator of other metaheuristics.
+	 *
+	 * @param selection
+	 *            The selection, replaced by the best one found.
+	 * @param iterations
+	 *            The number of iterations.
+	 * @return The cost of the best selection found.
+	 */
+	public double improve(boolean[] selection, long iterations) {
+		reset(selection);
+		keepBest();
+		search(Long.MAX_VALUE, iterations, false);
+		System.arraycopy(bestSelection, 0, selection, 0, domainSize);
+		return bestCost;
+	}
+
+	/**
+	 * Makes moves until the time limit or the number of iterations is
+	 * reached, keeping the best selection.
+	 *
+	 * @param endTime
+	 *            The time at which the search stops.
+	 * @param iterations
+	 *            The number of iterations.
+	 * @param restarts
+	 *            Whether the search restarts on stagnation.
+	 */
+	protected void search(long endTime, long iterations, boolean restarts) {
+
+		long lastImprovement = iteration;
+		for (long k = 0; k < iterations; k++) {
+			/* the clock is read once every 64 iterations */
+			if ((k & 63) == 0 && System.currentTimeMillis() > endTime)
+				break;
+			iteration++;
+			step();
+			if (cost > bestCost) {
+				keepBest();
+				lastImprovement = iteration;
+				if (restarts && verbose)
+					System.out.println("(Iter. " + iteration + ") BestSol = " + decode(bestSelection, bestCost));
+			} else if (restarts && iteration - lastImprovement > stagnationLimit) {
+				restart();
+				lastImprovement = iteration;
+			}
+		}
+	}
+
+	/**
+	 * Makes the best admissible move of the neighbourhood: a flip or a swap
+	 * whose elements are not tabu, or whatever move leads to a cost better
+	 * than {@link #bestCost}. Nothing is done when no move is admissible.
+	 */
+	protected void step() {
+
+		int nIn = 0, nOut = 0;
+		for (int i = 0; i < domainSize; i++) {
+			if (selected[i])
+				inside[nIn++] = i;
+			else
+				outside[nOut++] = i;
+		}
+
+		double aspiration = bestCost - cost;
+		double bestDelta = Double.NEGATIVE_INFINITY;
+		int bestIn = -1, bestOut = -1;
+
+		for (int a = 0; a < nOut; a++) {
+			int i = outside[a];
+			double delta = insertionCost(i);
+			if (delta > bestDelta && (tabuUntil[i] < iteration || delta > aspiration) && fits(i)) {
+				bestDelta = delta;
+				bestIn = i;
+				bestOut = -1;
+			}
+		}
+		for (int b = 0; b < nIn; b++) {
+			int j = inside[b];
+			double delta = removalCost(j);
+			if (delta > bestDelta && (tabuUntil[j] < iteration || delta > aspiration)) {
+				bestDelta = delta;
+				bestIn = -1;
+				bestOut = j;
+			}
+		}
+		for (int a = 0; a < nOut; a++) {
+			int i = outside[a];
+			boolean inFree = tabuUntil[i] < iteration;
+			for (int b = 0; b < nIn; b++) {
+				int j = inside[b];
+				double delta = exchangeCost(i, j);
+				if (delta > bestDelta && ((inFree && tabuUntil[j] < iteration) || delta > aspiration)
+						&& fitsExchange(i, j)) {
+					bestDelta = delta;
+					bestIn = i;
+					bestOut = j;
+				}
+			}
+		}
+
+		if (bestOut >= 0) {
+			flip(bestOut);
+			tabuUntil[bestOut] = iteration + tenure;
+		}
+		if (bestIn >= 0) {
+			flip(bestIn);
+			tabuUntil[bestIn] = iteration + tenure;
+		}
+		if (bestIn >= 0 || bestOut >= 0)
+			cost += bestDelta;
+	}
+
+	/**
+	 * Restarts the search from a perturbation of the incumbent, when it is
+	 * shared and better, or else of the best selection. The elements flipped
+	 * are drawn at random, insertions being made only when they fit.
+	 */
+	protected void restart() {
+
+		boolean[] start = bestSelection.clone();
+		if (incumbent != null) {
+			SharedIncumbent.Snapshot<Solution<E>> snapshot = incumbent.get();
+			if (snapshot.solution != null && snapshot.cost > bestCost) {
+				Arrays.fill(start, false);
+				for (E elem : snapshot.solution) {
+					start[index(elem)] = true;
+				}
+			}
+		}
+		reset(start);
+		if (cost > bestCost)
+			keepBest();
+
+		int flips = Math.max(2, (int) Math.round(perturbation * domainSize));
+		for (int f = 0; f < flips; f++) {
+			int i = random.nextInt(domainSize);
+			if (selected[i]) {
+				cost += removalCost(i);
+				flip(i);
+			} else if (fits(i)) {
+				cost += insertionCost(i);
+				flip(i);
+			}
+		}
+	}
+
+	/**
+	 * Builds the selection the search starts from. The default visits the
+	 * elements in random order and selects each one with probability 1/2 if
+	 * it fits.
+	 *
+	 * @return A feasible selection.
+	 */
+	protected boolean[] initialSelection() {
+
+		int[] order = new int[domainSize];
+		for (int i = 0; i < domainSize; i++) {
+			order[i] = i;
+		}
+		boolean[] selection = new boolean[domainSize];
+		double[] used = new double[constraintCount];
+		for (int k = 0; k < domainSize; k++) {
+			int r = k + random.nextInt(domainSize - k);
+			int i = order[r];
+			order[r] = order[k];
+			order[k] = i;
+			if (!random.nextBoolean())
+				continue;
+			boolean fits = true;
+			for (int d = 0; d < constraintCount; d++) {
+				if (used[d] + elementWeights[i * constraintCount + d] > capacities[d])
+					fits = false;
+			}
+			if (fits) {
+				selection[i] = true;
+				for (int d = 0; d < constraintCount; d++) {
+					used[d] += elementWeights[i * constraintCount + d];
+				}
+			}
+		}
+		return selection;
+	}
+
+	/**
+	 * Makes a selection the current one, recomputing its loads and gains, and
+	 * clears the tabu memory.
+	 *
+	 * @param selection
+	 *            The new selection.
+	 */
+	protected void reset(boolean[] selection) {
+		System.arraycopy(selection, 0, selected, 0, domainSize);
+		Arrays.fill(load, 0.0);
+		for (int i = 0; i < domainSize; i++) {
+			if (selected[i]) {
+				for (int r = 0; r < constraintCount; r++) {
+					load[r] += elementWeights[i * constraintCount + r];
+				}
+			}
+		}
+		cost = resetGains(selected);
+		Arrays.fill(tabuUntil, 0L);
+	}
+
+	/**
+	 * Flips an element of the current selection, updating the loads and the
+	 * gains; the cost is updated by the caller.
+	 *
+	 * @param i
+	 *            The element being flipped.
+	 */
+	protected void flip(int i) {
+		double sign = selected[i] ? -1.0 : 1.0;
+		selected[i] = !selected[i];
+		for (int r = 0; r < constraintCount; r++) {
+			load[r] += sign * elementWeights[i * constraintCount + r];
+		}
+		updateGains(i);
+	}
+
+	/**
+	 * Tells whether an unselected element can be inserted without exceeding
+	 * any knapsack capacity.
+	 */
+	protected boolean fits(int i) {
+		for (int r = 0; r < constraintCount; r++) {
+			if (load[r] + elementWeights[i * constraintCount + r] > capacities[r])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether an unselected element can replace a selected one without
+	 * exceeding any knapsack capacity.
+	 */
+	protected boolean fitsExchange(int in, int out) {
+		for (int r = 0; r < constraintCount; r++) {
+			if (load[r] + elementWeights[in * constraintCount + r] - elementWeights[out * constraintCount + r] > capacities[r])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the current selection as the best one, offering it to the
+	 * {@link #incumbent}.
+	 */
+	protected void keepBest() {
+		System.arraycopy(selected, 0, bestSelection, 0, domainSize);
+		bestCost = cost;
+		if (incumbent != null && bestCost > incumbent.getCost())
+			incumbent.offer(decode(bestSelection, bestCost), bestCost, incumbentName);
+	}
+
+	/**
+	 * Builds the solution of a selection.
+	 *
+	 * @param selection
+	 *            The selection.
+	 * @param cost
+	 *            The cost of the selection.
+	 * @return The solution, with its cost and its weight in the first
+	 *         knapsack dimension set.
+	 */
+	protected Solution<E> decode(boolean[] selection, double cost) {
+		Solution<E> sol = new Solution<E>();
+		double weight = 0.0;
+		for (int i = 0; i < domainSize; i++) {
+			if (selection[i]) {
+				sol.add(element(i));
+				weight += elementWeights[i * constraintCount];
+			}
+		}
+		sol.cost = cost;
+		sol.weigth = weight;
+		return sol;
+	}
+
+	/**
+	 * Makes the TS cooperate with other solvers through a shared incumbent.
+	 *
+	 * @param incumbent
+	 *            The shared incumbent.
+	 * @param name
+	 *            The name of this TS among the solvers.
+	 */
+	public void setIncumbent(SharedIncumbent<Solution<E>> incumbent, String name) {
+		this.incumbent = incumbent;
+		this.incumbentName = name;
+	}
+
+	public void setTenure(int tenure) {
+		this.tenure = tenure;
+	}
+
+	public void setStagnationLimit(int stagnationLimit) {
+		this.stagnationLimit = stagnationLimit;
+	}
+
+	public void setPerturbation(double perturbation) {
+		this.perturbation = perturbation;
+	}
+
+	public void setSeed(long seed) {
+		this.random = new SplittableRandom(seed);
+	}
+
+	public double getBestCost() {
+		return bestCost;
+	}
+
+	public long getIteration() {
+		return iteration;
+	}
+
+}
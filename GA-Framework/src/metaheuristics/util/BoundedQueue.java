@@ -0,0 +1,128 @@
+package metaheuristics.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free queue for multiple producers and multiple consumers,
+ * built over a ring of slots in which each slot carries a sequence number
+ * (D. Vyukov's bounded MPMC queue). Producers and consumers only contend on
+ * a compare-and-set of the tail and head counters, and neither operation
+ * ever blocks: {@link #offer} fails when the queue is full and {@link #poll}
+ * returns null when it is empty.
+ * 
+ * @param <T>
+ *            Generic type of the queued items.
+ */
+public class BoundedQueue<T> {
+
+	/**
+	 * the number of slots minus one, the number of slots being a power of two
+	 */
+	private final int mask;
+
+	/**
+	 * the items of the queue
+	 */
+	private final AtomicReferenceArray<T> items;
+
+	/**
+	 * the sequence number of each slot: equal to the position of the next
+	 * offer when the slot is free, and to that position plus one when the slot
+	 * holds an item to be polled
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * the position of the next offer
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * the position of the next poll
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * Constructor for the BoundedQueue class.
+	 * 
+	 * @param capacity
+	 *            The minimum number of items the queue holds, rounded up to a
+	 *            power of two.
+	 */
+	public BoundedQueue(int capacity) {
+		int slots = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+		this.mask = slots - 1;
+		this.items = new AtomicReferenceArray<T>(slots);
+		this.sequences = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Inserts an item at the tail of the queue, if there is room for it.
+	 * 
+	 * @param item
+	 *            The item being inserted.
+	 * @return true if the item was inserted, false if the queue is full.
+	 */
+	public boolean offer(T item) {
+
+		long pos = tail.get();
+		while (true) {
+			int slot = (int) pos & mask;
+			long dif = sequences.get(slot) - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					items.set(slot, item);
+					sequences.set(slot, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the item at the head of the queue, if any.
+	 * 
+	 * @return The removed item, or null if the queue is empty.
+	 */
+	public T poll() {
+
+		long pos = head.get();
+		while (true) {
+			int slot = (int) pos & mask;
+			long dif = sequences.get(slot) - (pos + 1);
+			if (dif == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					T item = items.get(slot);
+					items.set(slot, null);
+					sequences.set(slot, pos + mask + 1);
+					return item;
+				}
+				pos = head.get();
+			} else if (dif < 0) {
+				return null;
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Gives the number of slots of the queue.
+	 * 
+	 * @return the capacity of the queue.
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+}
@@ -0,0 +1,474 @@
+package metaheuristics.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A non-blocking stream of progress events (improvements, generation
+ * statistics, final results), written as NDJSON: one JSON object per line.
+ * Publishing an event only formats it and offers it to a bounded lock-free
+ * ring ({@link BoundedQueue}); a background thread drains the ring and writes
+ * the lines either to a file (to be followed with tail -f) or to the clients
+ * connected to a local TCP or Unix-domain socket. When the ring is full, or
+ * when the socket has no client, the events are dropped instead of slowing
+ * the publisher down.
+ */
+public class EventStream implements Closeable {
+
+	/**
+	 * Where the lines are written to.
+	 */
+	private interface Sink {
+
+		/**
+		 * @return true if someone may read the lines being written.
+		 */
+		boolean isListening();
+
+		void write(String line) throws IOException;
+
+		void flush() throws IOException;
+
+		void close() throws IOException;
+	}
+
+	/**
+	 * the default number of events the ring holds
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * the longest time, in milliseconds, {@link #close} waits for the pending
+	 * events to be written
+	 */
+	public static final long CLOSE_TIMEOUT = 5000;
+
+	/**
+	 * the events waiting to be written
+	 */
+	private final BoundedQueue<String> ring;
+
+	/**
+	 * the destination of the events
+	 */
+	private final Sink sink;
+
+	/**
+	 * the thread writing the events
+	 */
+	private final Thread writer;
+
+	/**
+	 * the start of the stream, for the timestamps of the events
+	 */
+	private final long startTime = System.nanoTime();
+
+	/**
+	 * the number of events dropped because the ring was full or nobody was
+	 * listening
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean closed = false;
+
+	private EventStream(Sink sink, int capacity) {
+		this.ring = new BoundedQueue<String>(capacity);
+		this.sink = sink;
+		this.writer = new Thread(this::drain, "event-stream-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Creates a stream appending the events to a file.
+	 *
+	 * @param filename
+	 *            Name of the NDJSON file.
+	 * @return The event stream.
+	 * @throws IOException
+	 *             If the file cannot be opened.
+	 */
+	public static EventStream toFile(String filename) throws IOException {
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, true), StandardCharsets.UTF_8));
+		return new EventStream(new Sink() {
+			public boolean isListening() {
+				return true;
+			}
+
+			public void write(String line) throws IOException {
+				out.write(line);
+				out.write('\n');
+			}
+
+			public void flush() throws IOException {
+				out.flush();
+			}
+
+			public void close() throws IOException {
+				out.close();
+			}
+		}, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a stream serving the events to the clients of a TCP socket
+	 * bound to the loopback interface.
+	 *
+	 * @param port
+	 *            The port to listen to.
+	 * @return The event stream.
+	 * @throws IOException
+	 *             If the socket cannot be bound.
+	 */
+	public static EventStream listen(int port) throws IOException {
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		return new EventStream(new SocketSink(server, null), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a stream serving the events to the clients of a Unix-domain
+	 * socket. A stale socket file at the same path is replaced.
+	 *
+	 * @param socketPath
+	 *            The path of the socket file.
+	 * @return The event stream.
+	 * @throws IOException
+	 *             If the socket cannot be bound.
+	 */
+	public static EventStream listenUnix(String socketPath) throws IOException {
+		Path path = Paths.get(socketPath);
+		Files.deleteIfExists(path);
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(path));
+		return new EventStream(new SocketSink(server, path), DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Publishes an event. The event is a JSON object holding its type, the
+	 * time elapsed since the stream was created (in milliseconds) and the
+	 * given fields. Numbers are written as such, collections as arrays and
+	 * any other value as a string. This method never blocks: the event is
+	 * dropped if it cannot be queued or if nobody is listening.
+	 *
+	 * @param type
+	 *            The type of the event.
+	 * @param fields
+	 *            Alternating field names and values.
+	 */
+	public void publish(String type, Object... fields) {
+
+		if (closed || !sink.isListening()) {
+			dropped.incrementAndGet();
+			return;
+		}
+
+		StringBuilder line = new StringBuilder(64);
+		line.append("{\"event\":");
+		appendValue(line, type);
+		line.append(",\"ms\":").append((System.nanoTime() - startTime) / 1000000);
+		for (int f = 0; f + 1 < fields.length; f += 2) {
+			line.append(',');
+			appendValue(line, String.valueOf(fields[f]));
+			line.append(':');
+			appendValue(line, fields[f + 1]);
+		}
+		line.append('}');
+
+		if (!ring.offer(line.toString()))
+			dropped.incrementAndGet();
+	}
+
+	/**
+	 * Tells whether published events may currently be read by someone, so
+	 * that publishers can skip gathering costly statistics.
+	 *
+	 * @return true if the events are not being dropped.
+	 */
+	public boolean isListening() {
+		return !closed && sink.isListening();
+	}
+
+	/**
+	 * Gives the number of events dropped so far.
+	 *
+	 * @return the number of dropped events.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes the pending events and closes the stream, waiting at most
+	 * {@link #CLOSE_TIMEOUT} for the writer.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			writer.join(CLOSE_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The writer loop: drains the ring to the sink until the stream is closed,
+	 * flushing whenever the ring becomes empty.
+	 */
+	private void drain() {
+
+		boolean pending = false;
+		while (true) {
+			String line = ring.poll();
+			try {
+				if (line != null) {
+					sink.write(line);
+					pending = true;
+					continue;
+				}
+				if (pending) {
+					sink.flush();
+					pending = false;
+				}
+			} catch (IOException e) {
+				dropped.incrementAndGet();
+			}
+			if (closed)
+				break;
+			LockSupport.parkNanos(1000000);
+		}
+
+		try {
+			sink.flush();
+			sink.close();
+		} catch (IOException e) {
+			// nothing else can be done with the remaining events
+		}
+	}
+
+	private static void appendValue(StringBuilder sb, Object value) {
+
+		if (value == null) {
+			sb.append("null");
+		} else if (value instanceof Number) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				sb.append("null");
+			} else if (value instanceof Double || value instanceof Float) {
+				sb.append(d == Math.rint(d) && Math.abs(d) < 1e15 ? Long.toString((long) d) : Double.toString(d));
+			} else {
+				sb.append(value);
+			}
+		} else if (value instanceof Boolean) {
+			sb.append(value);
+		} else if (value instanceof Collection) {
+			sb.append('[');
+			boolean first = true;
+			for (Object item : (Collection<?>) value) {
+				if (!first)
+					sb.append(',');
+				appendValue(sb, item);
+				first = false;
+			}
+			sb.append(']');
+		} else {
+			String s = value.toString();
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\') {
+					sb.append('\\').append(c);
+				} else if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+	}
+
+	/**
+	 * A sink sending the lines to every client connected to a server socket.
+	 * New clients are accepted without blocking each time lines are written.
+	 * The clients are written to without blocking too: the bytes a client
+	 * cannot take at once are kept in a backlog of at most
+	 * {@link #MAX_BACKLOG} bytes, sent before the next lines, and a client
+	 * whose backlog overflows, because it stopped reading or does not keep
+	 * up, is disconnected like one that fails to receive, so that it never
+	 * holds the writer.
+	 */
+	private static class SocketSink implements Sink {
+
+		/**
+		 * the most bytes held for a client before it is disconnected
+		 */
+		private static final int MAX_BACKLOG = 1 << 16;
+
+		/**
+		 * A connected client and the bytes it has not taken yet.
+		 */
+		private static class Client {
+
+			private final SocketChannel channel;
+
+			/**
+			 * the bytes waiting to be sent, from 0 to the position, or null
+			 */
+			private ByteBuffer backlog;
+
+			private Client(SocketChannel channel) {
+				this.channel = channel;
+			}
+		}
+
+		private final ServerSocketChannel server;
+
+		private final Path socketFile;
+
+		private final Selector selector;
+
+		private final List<Client> clients = new ArrayList<Client>();
+
+		private volatile boolean listening = false;
+
+		private SocketSink(ServerSocketChannel server, Path socketFile) throws IOException {
+			this.server = server;
+			this.socketFile = socketFile;
+			this.selector = Selector.open();
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			Thread acceptor = new Thread(this::acceptLoop, "event-stream-acceptor");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+
+		/**
+		 * Waits for connections, so that {@link #isListening} becomes true as
+		 * soon as a client arrives.
+		 */
+		private void acceptLoop() {
+			while (server.isOpen()) {
+				try {
+					if (selector.select(200) > 0) {
+						selector.selectedKeys().clear();
+						SocketChannel client = server.accept();
+						if (client != null) {
+							client.configureBlocking(false);
+							synchronized (clients) {
+								clients.add(new Client(client));
+								listening = true;
+							}
+						}
+					}
+				} catch (IOException e) {
+					return;
+				}
+			}
+		}
+
+		public boolean isListening() {
+			return listening;
+		}
+
+		public void write(String line) throws IOException {
+			send((line + "\n").getBytes(StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * Sends the backlogs of the clients.
+		 */
+		public void flush() throws IOException {
+			send(new byte[0]);
+		}
+
+		/**
+		 * Sends bytes to every client, after its backlog, disconnecting the
+		 * clients that fail to receive or whose backlog overflows.
+		 */
+		private void send(byte[] bytes) throws IOException {
+			synchronized (clients) {
+				Iterator<Client> it = clients.iterator();
+				while (it.hasNext()) {
+					Client client = it.next();
+					boolean keep;
+					try {
+						keep = send(client, ByteBuffer.wrap(bytes));
+					} catch (IOException e) {
+						keep = false;
+					}
+					if (!keep) {
+						it.remove();
+						client.channel.close();
+					}
+				}
+				listening = !clients.isEmpty();
+			}
+		}
+
+		/**
+		 * Sends bytes to a client without blocking, after its backlog.
+		 *
+		 * @return false if the bytes overflow the backlog.
+		 */
+		private boolean send(Client client, ByteBuffer bytes) throws IOException {
+			ByteBuffer backlog = client.backlog;
+			if (backlog != null && backlog.position() > 0) {
+				backlog.flip();
+				client.channel.write(backlog);
+				backlog.compact();
+			}
+			if (backlog == null || backlog.position() == 0)
+				client.channel.write(bytes);
+			if (!bytes.hasRemaining())
+				return true;
+
+			if (backlog == null)
+				backlog = client.backlog = ByteBuffer.allocate(MAX_BACKLOG);
+			if (bytes.remaining() > backlog.remaining())
+				return false;
+			backlog.put(bytes);
+			return true;
+		}
+
+		public void close() throws IOException {
+			synchronized (clients) {
+				for (Client client : clients) {
+					client.channel.close();
+				}
+				clients.clear();
+				listening = false;
+			}
+			server.close();
+			selector.close();
+			if (socketFile != null)
+				Files.deleteIfExists(socketFile);
+		}
+	}
+
+}
@@ -0,0 +1,83 @@
+package metaheuristics.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The best solution found by a group of solvers running concurrently. It is
+ * kept in an immutable snapshot behind an {@link AtomicReference}, so reading
+ * it never blocks and offering a better solution is a compare-and-set. Each
+ * replacement increments the version of the snapshot, which lets a solver
+ * notice cheaply that another one has found something new.
+ *
+ * The solutions offered must not be modified afterwards.
+ *
+ * @param <T>
+ *            Generic type of the solutions.
+ */
+public class SharedIncumbent<T> {
+
+	/**
+	 * An incumbent solution, its cost, its version and the name of the solver
+	 * that found it.
+	 */
+	public static final class Snapshot<T> {
+
+		public final T solution;
+
+		public final double cost;
+
+		public final long version;
+
+		public final String source;
+
+		private Snapshot(T solution, double cost, long version, String source) {
+			this.solution = solution;
+			this.cost = cost;
+			this.version = version;
+			this.source = source;
+		}
+	}
+
+	private final AtomicReference<Snapshot<T>> best = new AtomicReference<Snapshot<T>>(
+			new Snapshot<T>(null, Double.NEGATIVE_INFINITY, 0, null));
+
+	/**
+	 * Offers a solution, which becomes the incumbent if it is strictly better
+	 * (greater cost) than the current one.
+	 *
+	 * @param solution
+	 *            The solution.
+	 * @param cost
+	 *            The cost of the solution.
+	 * @param source
+	 *            The name of the solver offering it.
+	 * @return the snapshot installed, whose version the caller may remember
+	 *         as already seen, or null if the solution was not better.
+	 */
+	public Snapshot<T> offer(T solution, double cost, String source) {
+		while (true) {
+			Snapshot<T> current = best.get();
+			if (!(cost > current.cost))
+				return null;
+			Snapshot<T> installed = new Snapshot<T>(solution, cost, current.version + 1, source);
+			if (best.compareAndSet(current, installed))
+				return installed;
+		}
+	}
+
+	/**
+	 * @return the current snapshot; its solution is null until a first offer.
+	 */
+	public Snapshot<T> get() {
+		return best.get();
+	}
+
+	public double getCost() {
+		return best.get().cost;
+	}
+
+	public long getVersion() {
+		return best.get().version;
+	}
+
+}
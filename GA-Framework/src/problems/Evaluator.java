@@ -25,6 +25,64 @@ public interface Evaluator<E> {
 
 	public abstract Integer getPesoMax();
 
+	/**
+	 * Gives the number of knapsack constraints, i.e., of resource dimensions
+	 * in which each element has a weight. When there are several, the
+	 * {@link #getPesos()} and {@link #getPesoMax()} pair refers to the first
+	 * one.
+	 * 
+	 * @return the number of knapsack constraints.
+	 */
+	public default int getConstraintCount() {
+		return 1;
+	}
+
+	/**
+	 * Gives the weights of the elements in every resource dimension.
+	 * 
+	 * @return an array of {@link #getConstraintCount()} rows, each holding
+	 *         the weight of every element of the domain in one dimension.
+	 */
+	public default double[][] getConstraintWeights() {
+		Double[] pesos = getPesos();
+		double[][] weights = new double[1][pesos.length];
+		for (int i = 0; i < pesos.length; i++) {
+			weights[0][i] = pesos[i];
+		}
+		return weights;
+	}
+
+	/**
+	 * Gives the capacity of every resource dimension.
+	 * 
+	 * @return an array of {@link #getConstraintCount()} capacities.
+	 */
+	public default double[] getCapacities() {
+		return new double[] { getPesoMax() };
+	}
+
+	/**
+	 * Gives a hash of the instance data, telling whether results obtained on
+	 * an instance, such as cached evaluations, still hold for another one.
+	 * The default hashes the domain size, the weights and the capacities;
+	 * problems should mix in their objective coefficients.
+	 *
+	 * @return the fingerprint of the instance.
+	 */
+	public default long getFingerprint() {
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ getDomainSize()) * 0x100000001b3L;
+		for (double[] row : getConstraintWeights()) {
+			for (double w : row) {
+				h = (h ^ Double.doubleToLongBits(w)) * 0x100000001b3L;
+			}
+		}
+		for (double c : getCapacities()) {
+			h = (h ^ Double.doubleToLongBits(c)) * 0x100000001b3L;
+		}
+		return h;
+	}
+
 	/**
 	 * The evaluating function is responsible for returning the mapping value of
 	 * a solution.
@@ -0,0 +1,403 @@
+package problems;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import solutions.Solution;
+
+/**
+ * An {@link Evaluator} decorator that counts the calls made to each method
+ * of the decorated evaluator and samples their latencies. The counts are
+ * kept in striped {@link LongAdder}s, so concurrent evaluations do not
+ * contend. One call in {@link #sampleRate} is timed and recorded in a
+ * log-linear histogram (a power of two split into 8 sub-buckets, about 12%
+ * of resolution, in the fashion of HDR histograms), from which the
+ * percentiles and the total time are estimated.
+ *
+ * The calls are attributed to the phase set by {@link #enterPhase}, e.g.
+ * the steps of a GA generation, so the report tells which phase spends the
+ * evaluations. When disabled, a call costs a single volatile read besides
+ * the delegation.
+ *
+ * @param <E>
+ *            Generic type of the element which composes the solution.
+ */
+public class ProfilingEvaluator<E> implements Evaluator<E> {
+
+	/**
+	 * The profiled methods.
+	 */
+	public enum Method {
+		EVALUATE, INSERTION_COST, REMOVAL_COST, EXCHANGE_COST, SOLUTION_WEIGHT
+	}
+
+	/**
+	 * the number of sub-buckets per power of two
+	 */
+	private static final int SUB_BUCKETS = 8;
+
+	/**
+	 * The counters of one phase.
+	 */
+	protected static class Phase {
+
+		protected final String name;
+
+		protected final LongAdder[] calls = new LongAdder[Method.values().length];
+
+		protected final LongAdder[] sampledNanos = new LongAdder[Method.values().length];
+
+		protected final LongAdder[] samples = new LongAdder[Method.values().length];
+
+		protected Phase(String name) {
+			this.name = name;
+			for (int m = 0; m < calls.length; m++) {
+				calls[m] = new LongAdder();
+				sampledNanos[m] = new LongAdder();
+				samples[m] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * the evaluator being profiled
+	 */
+	protected final Evaluator<E> delegate;
+
+	/**
+	 * one call in sampleRate is timed
+	 */
+	protected final int sampleRate;
+
+	/**
+	 * flag that indicates whether the calls are being profiled
+	 */
+	protected volatile boolean enabled = true;
+
+	/**
+	 * the phase the calls are currently attributed to
+	 */
+	protected volatile Phase current;
+
+	/**
+	 * the phases seen so far, by name
+	 */
+	protected final Map<String, Phase> phases = new ConcurrentHashMap<String, Phase>();
+
+	/**
+	 * the sampled latency histogram of each method, in nanoseconds
+	 */
+	protected final AtomicLongArray[] histograms = new AtomicLongArray[Method.values().length];
+
+	/**
+	 * Constructor for the ProfilingEvaluator class.
+	 *
+	 * @param delegate
+	 *            The evaluator being profiled.
+	 * @param sampleRate
+	 *            One call in sampleRate is timed; 1 times every call.
+	 */
+	public ProfilingEvaluator(Evaluator<E> delegate, int sampleRate) {
+		this.delegate = delegate;
+		this.sampleRate = Math.max(1, sampleRate);
+		for (int m = 0; m < histograms.length; m++) {
+			histograms[m] = new AtomicLongArray(64 * SUB_BUCKETS);
+		}
+		enterPhase("default");
+	}
+
+	/**
+	 * Constructor for the ProfilingEvaluator class, timing one call in 16.
+	 *
+	 * @param delegate
+	 *            The evaluator being profiled.
+	 */
+	public ProfilingEvaluator(Evaluator<E> delegate) {
+		this(delegate, 16);
+	}
+
+	/**
+	 * Attributes the following calls to a phase.
+	 *
+	 * @param name
+	 *            The name of the phase.
+	 */
+	public void enterPhase(String name) {
+		Phase phase = current;
+		if (phase != null && phase.name.equals(name))
+			return;
+		current = phases.computeIfAbsent(name, Phase::new);
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Evaluator<E> getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Gives the number of calls made to a method, over all the phases.
+	 *
+	 * @param method
+	 *            The method.
+	 * @return the number of calls.
+	 */
+	public long getCalls(Method method) {
+		long total = 0;
+		for (Phase phase : phases.values()) {
+			total += phase.calls[method.ordinal()].sum();
+		}
+		return total;
+	}
+
+	/**
+	 * Discards every count and sample.
+	 */
+	public void reset() {
+		String name = current.name;
+		Phase phase = new Phase(name);
+		current = phase;
+		phases.clear();
+		phases.put(name, phase);
+		for (AtomicLongArray histogram : histograms) {
+			for (int b = 0; b < histogram.length(); b++) {
+				histogram.set(b, 0);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the current call is timed.
+	 */
+	private boolean sampled() {
+		return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+	}
+
+	/**
+	 * Records a call, and its latency when it was timed (start >= 0).
+	 */
+	private void record(Method method, long start) {
+		record(method, 1, start);
+	}
+
+	/**
+	 * Tells when evaluations made directly on the delegate start, for
+	 * {@link #record(Method, int, long)}: solvers may bypass the decorator
+	 * for a faster path of the delegate, e.g. over packed selections, and
+	 * still be profiled.
+	 *
+	 * @return the current time, if the evaluations are timed, or -1.
+	 */
+	public long begin() {
+		return enabled && sampled() ? System.nanoTime() : -1;
+	}
+
+	/**
+	 * Records evaluations made directly on the delegate as calls to a
+	 * method. When they were timed, their average latency is sampled once.
+	 * Nothing is recorded while the profiler is disabled.
+	 *
+	 * @param method
+	 *            The method the evaluations stand for.
+	 * @param count
+	 *            The number of evaluations.
+	 * @param start
+	 *            The time returned by {@link #begin}.
+	 */
+	public void record(Method method, int count, long start) {
+		if (!enabled || count <= 0)
+			return;
+		Phase phase = current;
+		int m = method.ordinal();
+		phase.calls[m].add(count);
+		if (start >= 0) {
+			long nanos = (System.nanoTime() - start) / count;
+			phase.sampledNanos[m].add(nanos);
+			phase.samples[m].increment();
+			histograms[m].incrementAndGet(bucket(nanos));
+		}
+	}
+
+	/**
+	 * Gives the histogram bucket of a latency: its power of two and the next
+	 * three bits.
+	 */
+	private static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS)
+			return (int) Math.max(0, nanos);
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+		return (exponent - 2) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gives the lowest latency of a histogram bucket.
+	 */
+	private static long bucketValue(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int exponent = bucket / SUB_BUCKETS + 2;
+		int sub = bucket % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + sub) << (exponent - 3);
+	}
+
+	/**
+	 * Estimates a percentile of the sampled latencies of a method.
+	 *
+	 * @param method
+	 *            The method.
+	 * @param percentile
+	 *            The percentile, between 0 and 100.
+	 * @return the latency, in nanoseconds, or 0 if there is no sample.
+	 */
+	public long getPercentile(Method method, double percentile) {
+		AtomicLongArray histogram = histograms[method.ordinal()];
+		long total = 0;
+		for (int b = 0; b < histogram.length(); b++) {
+			total += histogram.get(b);
+		}
+		if (total == 0)
+			return 0;
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		long seen = 0;
+		for (int b = 0; b < histogram.length(); b++) {
+			seen += histogram.get(b);
+			if (seen >= Math.max(1, rank))
+				return bucketValue(b);
+		}
+		return bucketValue(histogram.length() - 1);
+	}
+
+	/**
+	 * Prints, for each method called, its number of calls, its latency
+	 * percentiles and its estimated total time, followed by the attribution
+	 * of the calls and of the time to the phases.
+	 *
+	 * @param out
+	 *            The stream the report is printed to.
+	 */
+	public void report(PrintStream out) {
+
+		out.println("Evaluator profile (1 call in " + sampleRate + " timed)");
+		for (Method method : Method.values()) {
+			int m = method.ordinal();
+			long calls = 0, samples = 0, nanos = 0;
+			for (Phase phase : phases.values()) {
+				calls += phase.calls[m].sum();
+				samples += phase.samples[m].sum();
+				nanos += phase.sampledNanos[m].sum();
+			}
+			if (calls == 0)
+				continue;
+			double totalMs = samples == 0 ? 0.0 : (double) nanos / samples * calls / 1e6;
+			out.printf("  %-16s calls=%d p50=%dns p90=%dns p99=%dns total~%.1fms%n", method, calls,
+					getPercentile(method, 50), getPercentile(method, 90), getPercentile(method, 99), totalMs);
+			for (Phase phase : phases.values()) {
+				long phaseCalls = phase.calls[m].sum();
+				if (phaseCalls == 0)
+					continue;
+				long phaseSamples = phase.samples[m].sum();
+				double phaseMs = phaseSamples == 0 ? 0.0
+						: (double) phase.sampledNanos[m].sum() / phaseSamples * phaseCalls / 1e6;
+				out.printf("    %-14s calls=%d (%.1f%%) time~%.1fms%n", phase.name, phaseCalls,
+						100.0 * phaseCalls / calls, phaseMs);
+			}
+		}
+	}
+
+	@Override
+	public Integer getDomainSize() {
+		return delegate.getDomainSize();
+	}
+
+	@Override
+	public Double[] getPesos() {
+		return delegate.getPesos();
+	}
+
+	@Override
+	public Integer getPesoMax() {
+		return delegate.getPesoMax();
+	}
+
+	@Override
+	public int getConstraintCount() {
+		return delegate.getConstraintCount();
+	}
+
+	@Override
+	public double[][] getConstraintWeights() {
+		return delegate.getConstraintWeights();
+	}
+
+	@Override
+	public double[] getCapacities() {
+		return delegate.getCapacities();
+	}
+
+	@Override
+	public long getFingerprint() {
+		return delegate.getFingerprint();
+	}
+
+	@Override
+	public Double evaluate(Solution<E> sol) {
+		if (!enabled)
+			return delegate.evaluate(sol);
+		long start = sampled() ? System.nanoTime() : -1;
+		Double value = delegate.evaluate(sol);
+		record(Method.EVALUATE, start);
+		return value;
+	}
+
+	@Override
+	public Double evaluateInsertionCost(E elem, Solution<E> sol) {
+		if (!enabled)
+			return delegate.evaluateInsertionCost(elem, sol);
+		long start = sampled() ? System.nanoTime() : -1;
+		Double value = delegate.evaluateInsertionCost(elem, sol);
+		record(Method.INSERTION_COST, start);
+		return value;
+	}
+
+	@Override
+	public Double evaluateRemovalCost(E elem, Solution<E> sol) {
+		if (!enabled)
+			return delegate.evaluateRemovalCost(elem, sol);
+		long start = sampled() ? System.nanoTime() : -1;
+		Double value = delegate.evaluateRemovalCost(elem, sol);
+		record(Method.REMOVAL_COST, start);
+		return value;
+	}
+
+	@Override
+	public Double evaluateExchangeCost(E elemIn, E elemOut, Solution<E> sol) {
+		if (!enabled)
+			return delegate.evaluateExchangeCost(elemIn, elemOut, sol);
+		long start = sampled() ? System.nanoTime() : -1;
+		Double value = delegate.evaluateExchangeCost(elemIn, elemOut, sol);
+		record(Method.EXCHANGE_COST, start);
+		return value;
+	}
+
+	@Override
+	public Double solutionWeight(Solution<E> sol) {
+		if (!enabled)
+			return delegate.solutionWeight(sol);
+		long start = sampled() ? System.nanoTime() : -1;
+		Double value = delegate.solutionWeight(sol);
+		record(Method.SOLUTION_WEIGHT, start);
+		return value;
+	}
+
+}
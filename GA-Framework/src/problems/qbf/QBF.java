@@ -5,6 +5,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StreamTokenizer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import problems.Evaluator;
 import solutions.Solution;
@@ -27,6 +29,23 @@ public class QBF implements Evaluator<Integer> {
 	
     public Double[] pesos;
     public Integer pesoMax;
+
+	/**
+	 * The number of knapsack constraints (resource dimensions).
+	 */
+	public int constraints = 1;
+
+	/**
+	 * The weights of the elements, one row per resource dimension. The first
+	 * row holds the same values as {@link #pesos}.
+	 */
+	public double[][] constraintWeights;
+
+	/**
+	 * The capacity of each resource dimension. The first one is
+	 * {@link #pesoMax}.
+	 */
+	public double[] capacities;
 	
 
 	/**
@@ -40,9 +59,108 @@ public class QBF implements Evaluator<Integer> {
 	public final Double[] variables;
 
 	/**
-	 * The matrix A of coefficients for the QBF f(x) = x'.A.x
+	 * For each row i of A, the value A[i][i] plus the sum of the
+	 * positive entries A[i][j], j > i. The sum of these values over the
+	 * selected elements is an upper bound for the QBF (see
+	 * {@link #upperBoundQBF}).
+	 */
+	public double[] rowBounds;
+
+	/**
+	 * For each row i of A, the value A[i][i] plus the sum of the
+	 * negative entries A[i][j], j > i: the lowest contribution of a selected
+	 * row, which bounds the QBF from below (see {@link QBF_Inverse}).
+	 */
+	public double[] rowLowerBounds;
+
+	/**
+	 * The primitive types the upper triangle of A may be stored in.
+	 */
+	public enum Storage {
+		BYTE, SHORT, INT, DOUBLE
+	}
+
+	/**
+	 * The type chosen at load time for storing the upper triangle of
+	 * A: the narrowest integer type holding every coefficient, or
+	 * DOUBLE if some coefficient is not an integer.
+	 */
+	protected Storage storage;
+
+	/**
+	 * The upper triangle of the matrix A of coefficients for the QBF f(x) =
+	 * x'.A.x, row by row, in the array of the chosen {@link #storage} (the
+	 * others are null). A[i][j], j >= i, is at index {@link #rowOffset}[i] +
+	 * j. It is the only copy of A: every evaluation reads these arrays, which
+	 * for the shipped instances take one byte per coefficient (about 80 KB at
+	 * n = 400, 450 MB at n = 30000) instead of a boxed Double. Single
+	 * coefficients are read with {@link #coefficient} and {@link #coupling}.
+	 */
+	protected byte[] triangleBytes;
+
+	protected short[] triangleShorts;
+
+	protected int[] triangleInts;
+
+	protected double[] triangleDoubles;
+
+	/**
+	 * The offset of each row in the triangle arrays.
+	 */
+	protected int[] rowOffset;
+
+	/**
+	 * Figures about an instance, gathered while it is loaded.
+	 */
+	public static class Statistics {
+
+		/**
+		 * whether the instance has knapsack constraints
+		 */
+		public boolean constrained;
+
+		/**
+		 * the number of nonzero coefficients in the upper triangle of A
+		 */
+		public long nonZeros;
+
+		/**
+		 * the share of nonzero coefficients in the upper triangle of A
+		 */
+		public double density;
+
+		public double minCoefficient;
+
+		public double maxCoefficient;
+
+		/**
+		 * whether every coefficient is an integer
+		 */
+		public boolean integral;
+
+		/**
+		 * for each knapsack dimension, the total weight of the elements over
+		 * the capacity; below 1 the constraint cannot bind
+		 */
+		public double[] weightRatio;
+
+		@Override
+		public String toString() {
+			return "density=" + density + " coefficients=[" + minCoefficient + ", " + maxCoefficient + "]"
+					+ (integral ? " integral" : "") + " weight/capacity=" + Arrays.toString(weightRatio);
+		}
+	}
+
+	/**
+	 * The statistics of the instance, computed by {@link #readInput}.
+	 */
+	protected Statistics statistics;
+
+	/**
+	 * The cache-blocked engine of {@link #evaluatePackedQBF(long[][])},
+	 * created on its first use.
 	 */
-	public Double[][] A;
+	protected volatile QBFBatchEvaluator batchEvaluator;
 
 	/**
 	 * The constructor for QuadracticBinaryFunction class. The filename of the
@@ -98,25 +216,169 @@ public class QBF implements Evaluator<Integer> {
         return pesoMax;
     }
 
+	@Override
+	public int getConstraintCount() {
+		return constraints;
+	}
+
+	@Override
+	public double[][] getConstraintWeights() {
+		return constraintWeights;
+	}
+
+	@Override
+	public double[] getCapacities() {
+		return capacities;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The coefficients of the upper triangle of A are mixed in.
+	 */
+	@Override
+	public long getFingerprint() {
+		long h = Evaluator.super.getFingerprint();
+		for (int i = 0; i < size; i++) {
+			for (int j = i; j < size; j++) {
+				h = (h ^ Double.doubleToLongBits(coefficient(i, j))) * 0x100000001b3L;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Tells whether a solution respects the capacity of every resource
+	 * dimension.
+	 * 
+	 * @param sol
+	 *            the solution being checked.
+	 * @return true if the solution is feasible.
+	 */
+	public boolean isFeasible(Solution<Integer> sol) {
+		for (int r = 0; r < constraints; r++) {
+			double load = 0.0;
+			for (Integer elem : sol) {
+				load += constraintWeights[r][elem];
+			}
+			if (load > capacities[r])
+				return false;
+		}
+		return true;
+	}
+
 	/**
 	 * {@inheritDoc} In the case of a QBF, the evaluation correspond to
-	 * computing a matrix multiplication x'.A.x. A better way to evaluate this
+	 * computing x'.A.x, which is done over the selected elements only (see
+	 * {@link #evaluateQBF(Solution)}). A better way to evaluate this
 	 * function when at most two variables are modified is given by methods
 	 * {@link #evaluateInsertionQBF(int)}, {@link #evaluateRemovalQBF(int)} and
-	 * {@link #evaluateExchangeQBF(int,int)}.
+	 * {@link #evaluateExchangeQBF(int,int)}. This method does not use
+	 * {@link #variables}, so it may be called concurrently.
 	 * 
 	 * @return The evaluation of the QBF.
 	 */
 	@Override
 	public Double evaluate(Solution<Integer> sol) {
 
-		setVariables(sol);
-		sol.cost = evaluateQBF();
-		sol.weigth = evaluatePesos();
-		return sol.cost = evaluateQBF();
-		
+		sol.weigth = solutionWeight(sol);
+		return sol.cost = evaluateQBF(sol);
 
 	}
+
+	/**
+	 * Evaluates a QBF by summing the coefficients of the pairs of selected
+	 * elements, which costs O(k^2) for k selected elements instead of the
+	 * O(n^2) of {@link #evaluateQBF()}. The elements may be in any order and
+	 * {@link #variables} is left untouched.
+	 * 
+	 * @param sol
+	 *            the solution which will be evaluated.
+	 * @return The value of the QBF.
+	 */
+	public Double evaluateQBF(Solution<Integer> sol) {
+
+		int k = sol.size();
+		int[] elems = new int[k];
+		for (int a = 0; a < k; a++) {
+			elems[a] = sol.get(a);
+		}
+		Arrays.sort(elems);
+
+		double sum = 0.0;
+		for (int a = 0; a < k; a++) {
+			sum += rowValue(elems, a, k);
+		}
+
+		return sum;
+	}
+
+	/**
+	 * Sums the coefficients of row elems[a] of the upper triangle of
+	 * A over the columns elems[a..k-1], reading the array of the
+	 * chosen {@link #storage}. Integer coefficients are accumulated in a
+	 * long.
+	 * 
+	 * @param elems
+	 *            the selected elements, in increasing order.
+	 * @param a
+	 *            the position of the row element.
+	 * @param k
+	 *            the number of selected elements.
+	 * @return the sum of the row over the selected columns.
+	 */
+	protected double rowValue(int[] elems, int a, int k) {
+
+		int base = rowOffset[elems[a]];
+		switch (storage) {
+		case BYTE: {
+			byte[] t = triangleBytes;
+			long sum = 0;
+			for (int b = a; b < k; b++) {
+				sum += t[base + elems[b]];
+			}
+			return sum;
+		}
+		case SHORT: {
+			short[] t = triangleShorts;
+			long sum = 0;
+			for (int b = a; b < k; b++) {
+				sum += t[base + elems[b]];
+			}
+			return sum;
+		}
+		case INT: {
+			int[] t = triangleInts;
+			long sum = 0;
+			for (int b = a; b < k; b++) {
+				sum += t[base + elems[b]];
+			}
+			return sum;
+		}
+		default: {
+			double[] t = triangleDoubles;
+			double sum = 0.0;
+			for (int b = a; b < k; b++) {
+				sum += t[base + elems[b]];
+			}
+			return sum;
+		}
+		}
+	}
+
+	/**
+	 * @return the statistics gathered while loading the instance.
+	 */
+	public Statistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * @return the type the coefficients of A are stored in.
+	 */
+	public Storage getStorage() {
+		return storage;
+	}
 	
     public Double evaluatePesos() {
         Double sum = 0.0;
@@ -136,20 +398,188 @@ public class QBF implements Evaluator<Integer> {
 	 */
 	public Double evaluateQBF() {
 
-		Double aux = (double) 0, sum = (double) 0;
-		Double vecAux[] = new Double[size];
+		double aux = 0.0, sum = 0.0;
 
 		for (int i = 0; i < size; i++) {
-			for (int j = 0; j < size; j++) {
-				aux += variables[j] * A[i][j];
+			if (variables[i] == 0)
+				continue;
+			for (int j = i; j < size; j++) {
+				aux += variables[j] * coefficient(i, j);
 			}
-			vecAux[i] = aux;
 			sum += aux * variables[i];
-			aux = (double) 0;
+			aux = 0.0;
+		}
+
+		return sum;
+
+	}
+
+	/**
+	 * Gives the sense in which the values of the evaluator follow the QBF,
+	 * for the methods that work on f(x) = x'.A.x itself and must agree with
+	 * the evaluator (see {@link QBFGains}).
+	 * 
+	 * @return 1.0, as the evaluator gives f(x).
+	 */
+	public double sense() {
+		return 1.0;
+	}
+
+	/**
+	 * Computes in O(k), k being the number of selected elements, an upper bound
+	 * for the QBF value of a solution: since A is upper triangular, each
+	 * selected row i contributes at most {@link #rowBounds}[i].
+	 * 
+	 * @param sol
+	 *            the solution being bounded.
+	 * @return An upper bound for the (maximized) QBF value of the solution.
+	 */
+	public Double upperBoundQBF(Solution<Integer> sol) {
+
+		double bound = 0.0;
+		for (Integer elem : sol) {
+			bound += rowBounds[elem];
+		}
+
+		return bound;
+	}
+
+	/**
+	 * Evaluates a QBF over the selected elements only, in O(k^2) instead of
+	 * O(n^2), stopping as soon as the solution is known not to exceed a
+	 * threshold. After each selected row is summed, its
+	 * {@link #rowBounds} entry is replaced by its exact value; when the
+	 * partial value plus the bound of the remaining rows is below the
+	 * threshold the evaluation stops and that bound is returned.
+	 * 
+	 * @param sol
+	 *            the solution which will be evaluated, with its elements in
+	 *            increasing order.
+	 * @param threshold
+	 *            the value the solution must exceed to be of interest.
+	 * @return The exact value of the (maximized) QBF, or an upper bound
+	 *         strictly below the threshold.
+	 */
+	public Double evaluateBoundedQBF(Solution<Integer> sol, double threshold) {
+
+		int k = sol.size();
+		int[] elems = new int[k];
+		for (int a = 0; a < k; a++) {
+			elems[a] = sol.get(a);
+		}
+
+		return evaluateBoundedQBF(elems, k, threshold, 1.0, rowBounds);
+	}
+
+	/**
+	 * Evaluates a QBF over a packed selection: bit i of word i / 64 tells
+	 * whether element i is selected. Zero words are skipped and the set bits
+	 * are visited with {@link Long#numberOfTrailingZeros}, so the cost is
+	 * O(n / 64 + k^2) for k selected elements, without boxing.
+	 * 
+	 * @param packed
+	 *            the packed selection.
+	 * @return The value of the QBF.
+	 */
+	public double evaluatePackedQBF(long[] packed) {
+
+		int[] elems = new int[size];
+		int k = unpack(packed, elems);
+
+		double sum = 0.0;
+		for (int a = 0; a < k; a++) {
+			sum += rowValue(elems, a, k);
 		}
 
 		return sum;
+	}
+
+	/**
+	 * Evaluates a QBF over a batch of packed selections with the cache-blocked
+	 * {@link QBFBatchEvaluator}, in parallel. It pays off when the
+	 * coefficients do not fit in the caches, i.e., for very large domains.
+	 * 
+	 * @param batch
+	 *            the packed selections.
+	 * @return The value of the QBF for each selection.
+	 */
+	public double[] evaluatePackedQBF(long[][] batch) {
+
+		QBFBatchEvaluator engine = batchEvaluator;
+		if (engine == null)
+			batchEvaluator = engine = new QBFBatchEvaluator(this);
+
+		return engine.evaluate(batch);
+	}
+
+	/**
+	 * The packed counterpart of {@link #evaluateBoundedQBF(Solution, double)}.
+	 * 
+	 * @param packed
+	 *            the packed selection.
+	 * @param threshold
+	 *            the value the solution must exceed to be of interest.
+	 * @return The exact value of the (maximized) QBF, or an upper bound
+	 *         strictly below the threshold.
+	 */
+	public double evaluateBoundedPackedQBF(long[] packed, double threshold) {
+
+		int[] elems = new int[size];
+		int k = unpack(packed, elems);
+
+		return evaluateBoundedQBF(elems, k, threshold, 1.0, rowBounds);
+	}
+
+	/**
+	 * Lists the elements of a packed selection in increasing order.
+	 * 
+	 * @param packed
+	 *            the packed selection.
+	 * @param elems
+	 *            the array receiving the elements.
+	 * @return the number of selected elements.
+	 */
+	protected static int unpack(long[] packed, int[] elems) {
+		int k = 0;
+		for (int w = 0; w < packed.length; w++) {
+			long word = packed[w];
+			while (word != 0) {
+				elems[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+		}
+		return k;
+	}
+
+	/**
+	 * Evaluates sign.f(x) with early termination (see
+	 * {@link #evaluateBoundedQBF(Solution, double)}) over the first k
+	 * entries of an array of elements in increasing order.
+	 * 
+	 * @param sign
+	 *            1 for the QBF, -1 for its inverse.
+	 * @param bounds
+	 *            the bounds on the contribution of each row in the direction
+	 *            of the sign: {@link #rowBounds} for 1, {@link #rowLowerBounds}
+	 *            for -1.
+	 */
+	protected double evaluateBoundedQBF(int[] elems, int k, double threshold, double sign, double[] bounds) {
+
+		double remaining = 0.0;
+		for (int a = 0; a < k; a++) {
+			remaining += sign * bounds[elems[a]];
+		}
+		double sum = 0.0;
+
+		for (int a = 0; a < k; a++) {
+			sum += sign * rowValue(elems, a, k);
+			remaining -= sign * bounds[elems[a]];
+			if (sum + remaining < threshold) {
+				return sum + remaining;
+			}
+		}
 
+		return sum;
 	}
 
 	/*
@@ -255,7 +685,7 @@ public class QBF implements Evaluator<Integer> {
 
 		sum += evaluateContributionQBF(in);
 		sum -= evaluateContributionQBF(out);
-		sum -= (A[in][out] + A[out][in]);
+		sum -= coupling(in, out);
 
 		return sum;
 	}
@@ -276,25 +706,23 @@ public class QBF implements Evaluator<Integer> {
 	 */
 	private Double evaluateContributionQBF(int i) {
 
-		Double sum = 0.0;
+		double sum = 0.0;
 
 		for (int j = 0; j < size; j++) {
-			if (i != j)
-				sum += variables[j] * (A[i][j] + A[j][i]);
+			if (i != j && variables[j] != 0)
+				sum += variables[j] * coupling(i, j);
 		}
-		sum += A[i][i];
+		sum += coefficient(i, i);
 
 		return sum;
 	}
 	
 	@Override
 	public Double solutionWeight(Solution<Integer> sol) {
-		setVariables(sol);
-		Double totalWeight = 0.0;
-		for (int i = 0; i < size; i++) {
-			if(variables[i] == 1) {
-				totalWeight += pesos[i];				
-			}
+		double[] weights = constraintWeights[0];
+		double totalWeight = 0.0;
+		for (Integer elem : sol) {
+			totalWeight += weights[elem];
 		}
 		
 		return totalWeight;
@@ -303,68 +731,394 @@ public class QBF implements Evaluator<Integer> {
 	/**
 	 * Responsible for setting the QBF function parameters by reading the
 	 * necessary input from an external file. this method reads the domain's
-	 * dimension and matrix {@link #A}.
+	 * dimension and matrix A.
+	 * 
+	 * The first line holds the dimension n, optionally followed by the number
+	 * d of knapsack constraints. When d is absent (or 1) the next tokens are
+	 * the capacity and the n weights; otherwise they are the d capacities and
+	 * then d lines of n weights, one line per resource dimension. The upper
+	 * triangular matrix A follows in both cases. A file whose second line
+	 * holds n values is an unconstrained QBF (the instances/qbf format): it
+	 * has no capacity nor weights, and the matrix starts right away.
+	 * 
+	 * The file is parsed in a single pass, which checks that every token is a
+	 * number, that the file is long enough for the header before allocating
+	 * anything, that the capacities and weights are non-negative, and that the
+	 * matrix is neither truncated nor followed by extra data. The
+	 * {@link Statistics} of the instance are gathered during the same pass.
 	 * 
 	 * @param filename
 	 *            Name of the file containing the input for setting the black
 	 *            box function.
 	 * @return The dimension of the domain.
 	 * @throws IOException
-	 *             Necessary for I/O operations.
+	 *             If the file cannot be read or is malformed.
 	 */
 	protected Integer readInput(String filename) throws IOException {
 
-		Reader fileInst = new BufferedReader(new FileReader(filename));
-		StreamTokenizer stok = new StreamTokenizer(fileInst);
+		try (Reader fileInst = new BufferedReader(new FileReader(filename))) {
+			StreamTokenizer stok = new StreamTokenizer(fileInst);
+
+			stok.eolIsSignificant(true);
+			int _size = (int) nextNumber(stok, filename, "the dimension");
+			boolean explicitConstraints = false;
+			if (stok.nextToken() == StreamTokenizer.TT_NUMBER) {
+				constraints = (int) stok.nval;
+				explicitConstraints = true;
+				stok.nextToken();
+			}
+			if (stok.ttype != StreamTokenizer.TT_EOL)
+				throw malformed(stok, filename, "the end of the header line");
+			if (_size <= 0 || constraints <= 0)
+				throw new IOException(filename + ": invalid header " + _size + (explicitConstraints ? " " + constraints : ""));
+			if (_size > Integer.MAX_VALUE - 1 || constraints > Integer.MAX_VALUE - 1)
+				throw new IOException(filename + ": dimension " + Math.max(_size, constraints) + " is too large");
+
+			/*
+			 * the exact count of numbers is only known after the second line,
+			 * but without explicit constraints the file holds at least the
+			 * header and the triangle
+			 */
+			long triangle = (long) _size * (_size + 1) / 2;
+			long length = Files.size(Paths.get(filename));
+			long expected = 1 + triangle
+					+ (explicitConstraints ? 1 + constraints + (long) constraints * _size : 0);
+			checkLength(filename, length, expected);
+			if (triangle > Integer.MAX_VALUE - 8)
+				throw new IOException(filename + ": dimension " + _size + " is too large");
+
+			/* the second line tells the format apart */
+			int secondLine = stok.lineno();
+			double[] second = new double[Math.max(_size, constraints) + 1];
+			int secondCount = 0;
+			while (secondCount < second.length && stok.nextToken() == StreamTokenizer.TT_NUMBER) {
+				second[secondCount++] = stok.nval;
+			}
+			if (stok.ttype != StreamTokenizer.TT_NUMBER && stok.ttype != StreamTokenizer.TT_EOL
+					&& stok.ttype != StreamTokenizer.TT_EOF)
+				throw malformed(stok, filename, "a number");
+			boolean constrained = explicitConstraints || !(secondCount == _size && _size > 1);
+
+			expected = 1 + (explicitConstraints ? 1 : 0) + triangle
+					+ (constrained ? constraints + (long) constraints * _size : 0);
+			checkLength(filename, length, expected);
+
+			stok.eolIsSignificant(false);
+			statistics = new Statistics();
+			statistics.constrained = constrained;
+			int pending = 0;
+
+			if (constrained) {
+				if (secondCount != constraints)
+					throw new IOException(filename + ": expected " + constraints + " capacities on line 2, found "
+							+ secondCount);
+				capacities = Arrays.copyOf(second, constraints);
+				for (double c : capacities) {
+					if (!(c >= 0) || Double.isInfinite(c))
+						throw new IOException(filename + ":" + secondLine
+								+ ": expected a non-negative finite capacity, found number " + c);
+				}
+				constraintWeights = new double[constraints][_size];
+				statistics.weightRatio = new double[constraints];
+				for (int r = 0; r < constraints; r++) {
+					for (int i = 0; i < _size; i++) {
+						double w = nextNumber(stok, filename, "a weight");
+						if (w < 0)
+							throw malformed(stok, filename, "a non-negative weight");
+						constraintWeights[r][i] = w;
+						statistics.weightRatio[r] += w;
+					}
+					statistics.weightRatio[r] /= capacities[r];
+				}
+			} else {
+				constraints = 1;
+				capacities = new double[] { Double.POSITIVE_INFINITY };
+				constraintWeights = new double[1][_size];
+				statistics.weightRatio = new double[] { 0.0 };
+				/* the second line is the first row of the matrix */
+				pending = secondCount;
+			}
+
+			pesoMax = constrained ? (int) capacities[0] : Integer.MAX_VALUE;
+			pesos = new Double[_size];
+			for (int i = 0; i < _size; i++) {
+				pesos[i] = constraintWeights[0][i];
+			}
+
+			allocateTriangle(_size);
+			rowBounds = new double[_size];
+			rowLowerBounds = new double[_size];
+			boolean integral = true;
+			long nonZeros = 0;
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			int index = 0;
+			for (int i = 0; i < _size; i++) {
+				for (int j = i; j < _size; j++) {
+					double v;
+					if (index < pending) {
+						v = second[index];
+					} else {
+						v = nextNumber(stok, filename, "a coefficient");
+					}
+					storeCoefficient(index++, v);
+					if (v != 0)
+						nonZeros++;
+					integral &= v == Math.rint(v);
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+					if (j == i || v > 0)
+						rowBounds[i] += v;
+					if (j == i || v < 0)
+						rowLowerBounds[i] += v;
+				}
+			}
+			if (stok.nextToken() != StreamTokenizer.TT_EOF)
+				throw malformed(stok, filename, "the end of the file after " + expected + " numbers");
+
+			statistics.nonZeros = nonZeros;
+			statistics.density = (double) nonZeros / triangle;
+			statistics.minCoefficient = min;
+			statistics.maxCoefficient = max;
+			statistics.integral = integral;
 
+			return _size;
+		}
+	}
+
+	/**
+	 * Checks that a file of the given length can hold the expected count of
+	 * numbers, each one followed by a separator but the last.
+	 */
+	private static void checkLength(String filename, long length, long expected) throws IOException {
+		if ((length + 1) / 2 < expected)
+			throw new IOException(filename + ": " + length + " bytes cannot hold the " + expected
+					+ " numbers announced by the header");
+	}
+
+	/**
+	 * Reads the next token, which must be a number.
+	 */
+	private static double nextNumber(StreamTokenizer stok, String filename, String what) throws IOException {
 		stok.nextToken();
-		Integer _size = (int) stok.nval;
-		A = new Double[_size][_size];
-		
-		
-        pesos = new Double[_size];
-        stok.nextToken();
-        pesoMax = (int) stok.nval;
+		return currentNumber(stok, filename, what);
+	}
 
-        for (int i = 0; i<_size;i++) {
-            stok.nextToken();
-            pesos[i] = stok.nval;
-        }
-		
+	/**
+	 * Checks that the current token is a number and gives it.
+	 */
+	private static double currentNumber(StreamTokenizer stok, String filename, String what) throws IOException {
+		if (stok.ttype != StreamTokenizer.TT_NUMBER)
+			throw malformed(stok, filename, what);
+		return stok.nval;
+	}
 
-		for (int i = 0; i < _size; i++) {
-			for (int j = i; j < _size; j++) {
-				stok.nextToken();
-				A[i][j] = stok.nval;
-				if (j>i)
-					A[j][i] = 0.0;
+	private static IOException malformed(StreamTokenizer stok, String filename, String what) {
+		String found = stok.ttype == StreamTokenizer.TT_EOF ? "end of file"
+				: stok.ttype == StreamTokenizer.TT_EOL ? "end of line"
+				: stok.ttype == StreamTokenizer.TT_NUMBER ? "number " + stok.nval
+				: stok.ttype == StreamTokenizer.TT_WORD ? "'" + stok.sval + "'" : "'" + (char) stok.ttype + "'";
+		return new IOException(filename + ":" + stok.lineno() + ": expected " + what + ", found " + found);
+	}
+
+	/**
+	 * Allocates the triangle arrays for a domain of n elements, starting with
+	 * the narrowest {@link #storage}, which {@link #storeCoefficient} widens
+	 * as needed. The coefficients are stored as they are parsed, so no other
+	 * copy of A is ever held.
+	 * 
+	 * @param n
+	 *            the dimension of the domain.
+	 */
+	protected void allocateTriangle(int n) {
+
+		rowOffset = new int[n];
+		int length = 0;
+		for (int i = 0; i < n; i++) {
+			rowOffset[i] = length - i;
+			length += n - i;
+		}
+
+		storage = Storage.BYTE;
+		triangleBytes = new byte[length];
+		triangleShorts = null;
+		triangleInts = null;
+		triangleDoubles = null;
+	}
+
+	/**
+	 * Stores a coefficient of the upper triangle, first widening the
+	 * {@link #storage} to the narrowest type holding it and every coefficient
+	 * stored before, if the current one does not: the integer types hold
+	 * integers in their range, DOUBLE holds anything.
+	 * 
+	 * @param t
+	 *            the index of the coefficient in the triangle arrays.
+	 * @param v
+	 *            the coefficient.
+	 */
+	protected void storeCoefficient(int t, double v) {
+
+		switch (storage) {
+		case BYTE:
+			if ((byte) v == v) {
+				triangleBytes[t] = (byte) v;
+				return;
+			}
+			break;
+		case SHORT:
+			if ((short) v == v) {
+				triangleShorts[t] = (short) v;
+				return;
+			}
+			break;
+		case INT:
+			if ((int) v == v) {
+				triangleInts[t] = (int) v;
+				return;
 			}
+			break;
+		default:
+			triangleDoubles[t] = v;
+			return;
 		}
-		
-		System.out.println("Peso m�ximo = "+pesoMax);
 
-/*		System.out.println("Printando matriz :D");
-		
-        for (int i = 0; i < A.length; i++) {
-            // Loop pelas colunas da matriz
-            for (int j = 0; j < A[i].length; j++) {
-                System.out.print(A[i][j] + " ");
-            }
-            System.out.println(); // Para mover para a pr�xima linha
-        }
-		
-        System.out.println("FIM, agora pesos");
-        
-        for (int i = 0; i < pesos.length; i++) {
-        	System.out.print(pesos[i] + " ");
-        }
-        
-        System.out.println("FIM");
-        
-*/
-        
-		return _size;
+		Storage wider = (short) v == v ? Storage.SHORT : (int) v == v ? Storage.INT : Storage.DOUBLE;
+		widenTriangle(wider);
+		storeCoefficient(t, v);
+	}
 
+	/**
+	 * Copies the triangle into the arrays of a wider {@link #storage}.
+	 * 
+	 * @param wider
+	 *            the new storage, wider than the current one.
+	 */
+	private void widenTriangle(Storage wider) {
+
+		int n = rowOffset.length;
+		int length = rowOffset[n - 1] + n;
+		double[] doubles = wider == Storage.DOUBLE ? new double[length] : null;
+		int[] ints = wider == Storage.INT ? new int[length] : null;
+		short[] shorts = wider == Storage.SHORT ? new short[length] : null;
+		for (int t = 0; t < length; t++) {
+			double v = stored(t);
+			if (doubles != null)
+				doubles[t] = v;
+			else if (ints != null)
+				ints[t] = (int) v;
+			else
+				shorts[t] = (short) v;
+		}
+
+		triangleBytes = null;
+		triangleShorts = shorts;
+		triangleInts = ints;
+		triangleDoubles = doubles;
+		storage = wider;
+	}
+
+	/**
+	 * Gives the coefficient at an index of the triangle arrays.
+	 */
+	private double stored(int t) {
+		switch (storage) {
+		case BYTE:
+			return triangleBytes[t];
+		case SHORT:
+			return triangleShorts[t];
+		case INT:
+			return triangleInts[t];
+		default:
+			return triangleDoubles[t];
+		}
+	}
+
+	/**
+	 * Gives a coefficient of A, which is upper triangular.
+	 * 
+	 * @param i
+	 *            the row.
+	 * @param j
+	 *            the column.
+	 * @return A[i][j], zero if j < i.
+	 */
+	public double coefficient(int i, int j) {
+		return j < i ? 0.0 : stored(rowOffset[i] + j);
+	}
+
+	/**
+	 * Gives an entry of the symmetric coupling matrix of the QBF: A[i][j] +
+	 * A[j][i] for i != j, and A[i][i] for i = j, one of the two halves being
+	 * zero.
+	 * 
+	 * @param i
+	 *            the first element.
+	 * @param j
+	 *            the second element.
+	 * @return the coupling of the two elements.
+	 */
+	public double coupling(int i, int j) {
+		return j < i ? stored(rowOffset[j] + i) : stored(rowOffset[i] + j);
+	}
+
+	/**
+	 * Adds a multiple of row i of the coupling matrix (see {@link #coupling})
+	 * to a vector, leaving out the diagonal: target[j] += scale *
+	 * coupling(i, j) for every j != i. The part of the row left of the
+	 * diagonal is read down column i of the triangle, the rest along row i.
+	 * 
+	 * @param i
+	 *            the row.
+	 * @param scale
+	 *            the multiplier of the row.
+	 * @param target
+	 *            the vector, of the domain size.
+	 */
+	public void addCouplingRow(int i, double scale, double[] target) {
+
+		int n = target.length;
+		int base = rowOffset[i];
+		switch (storage) {
+		case BYTE: {
+			byte[] t = triangleBytes;
+			for (int j = 0; j < i; j++) {
+				target[j] += scale * t[rowOffset[j] + i];
+			}
+			for (int j = i + 1; j < n; j++) {
+				target[j] += scale * t[base + j];
+			}
+			break;
+		}
+		case SHORT: {
+			short[] t = triangleShorts;
+			for (int j = 0; j < i; j++) {
+				target[j] += scale * t[rowOffset[j] + i];
+			}
+			for (int j = i + 1; j < n; j++) {
+				target[j] += scale * t[base + j];
+			}
+			break;
+		}
+		case INT: {
+			int[] t = triangleInts;
+			for (int j = 0; j < i; j++) {
+				target[j] += scale * t[rowOffset[j] + i];
+			}
+			for (int j = i + 1; j < n; j++) {
+				target[j] += scale * t[base + j];
+			}
+			break;
+		}
+		default: {
+			double[] t = triangleDoubles;
+			for (int j = 0; j < i; j++) {
+				target[j] += scale * t[rowOffset[j] + i];
+			}
+			for (int j = i + 1; j < n; j++) {
+				target[j] += scale * t[base + j];
+			}
+		}
+		}
 	}
 
 	/**
@@ -386,13 +1140,13 @@ public class QBF implements Evaluator<Integer> {
 	}
 
 	/**
-	 * Prints matrix {@link #A}.
+	 * Prints matrix A.
 	 */
 	public void printMatrix() {
 
 		for (int i = 0; i < size; i++) {
 			for (int j = i; j < size; j++) {
-				System.out.print(A[i][j] + " ");
+				System.out.print(coefficient(i, j) + " ");
 			}
 			System.out.println();
 		}
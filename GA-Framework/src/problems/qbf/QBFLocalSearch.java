@@ -0,0 +1,137 @@
+package problems.qbf;
+
+import java.util.SplittableRandom;
+
+/**
+ * Local search for the (knapsack) QBF over the state of a {@link QBFGains}.
+ * The neighbourhood of a solution holds the insertions that fit, the
+ * removals and the exchanges of a selected element for an unselected one
+ * that fit; every move is evaluated in O(1) from the gain vector. The values
+ * are those of the maximized QBF f(x) = x'.A.x.
+ */
+public class QBFLocalSearch {
+
+	/**
+	 * the smallest variation considered an improvement
+	 */
+	public static final double EPSILON = 1e-9;
+
+	private QBFLocalSearch() {
+	}
+
+	/**
+	 * Applies best-improving moves until the solution is a local optimum.
+	 * Each step costs O(n.k) for the exchanges plus O(n) for applying the
+	 * move.
+	 *
+	 * @param state
+	 *            The feasible solution being improved, updated in place.
+	 * @return The number of moves applied.
+	 */
+	public static int improve(QBFGains state) {
+
+		int n = state.size();
+		int[] in = new int[n], out = new int[n];
+		int moves = 0;
+
+		while (true) {
+			int nIn = 0, nOut = 0;
+			for (int i = 0; i < n; i++) {
+				if (state.isSelected(i))
+					out[nOut++] = i;
+				else
+					in[nIn++] = i;
+			}
+
+			double bestDelta = EPSILON;
+			int bestIn = -1, bestOut = -1;
+			for (int a = 0; a < nIn; a++) {
+				int i = in[a];
+				double delta = state.insertionDelta(i);
+				if (delta > bestDelta && state.fits(i)) {
+					bestDelta = delta;
+					bestIn = i;
+					bestOut = -1;
+				}
+			}
+			for (int b = 0; b < nOut; b++) {
+				int j = out[b];
+				double delta = state.removalDelta(j);
+				if (delta > bestDelta) {
+					bestDelta = delta;
+					bestIn = -1;
+					bestOut = j;
+				}
+			}
+			for (int a = 0; a < nIn; a++) {
+				int i = in[a];
+				for (int b = 0; b < nOut; b++) {
+					int j = out[b];
+					double delta = state.exchangeDelta(i, j);
+					if (delta > bestDelta && state.fitsExchange(i, j)) {
+						bestDelta = delta;
+						bestIn = i;
+						bestOut = j;
+					}
+				}
+			}
+
+			if (bestIn < 0 && bestOut < 0)
+				return moves;
+			if (bestOut >= 0)
+				state.flip(bestOut);
+			if (bestIn >= 0)
+				state.flip(bestIn);
+			moves++;
+		}
+	}
+
+	/**
+	 * Builds a random feasible solution: the elements are visited in random
+	 * order and each one is inserted with probability 1/2 if it fits.
+	 *
+	 * @param qbf
+	 *            The QBF.
+	 * @param random
+	 *            The generator of the choices.
+	 * @return The state of the solution.
+	 */
+	public static QBFGains randomSolution(QBF qbf, SplittableRandom random) {
+
+		int n = qbf.size;
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		QBFGains state = new QBFGains(qbf);
+		for (int k = 0; k < n; k++) {
+			int r = k + random.nextInt(n - k);
+			int i = order[r];
+			order[r] = order[k];
+			order[k] = i;
+			if (random.nextBoolean() && state.fits(i))
+				state.flip(i);
+		}
+		return state;
+	}
+
+	/**
+	 * Perturbs a solution by flipping random elements, insertions being made
+	 * only when they fit.
+	 *
+	 * @param state
+	 *            The feasible solution, updated in place.
+	 * @param flips
+	 *            The number of flips attempted.
+	 * @param random
+	 *            The generator of the choices.
+	 */
+	public static void perturb(QBFGains state, int flips, SplittableRandom random) {
+		for (int f = 0; f < flips; f++) {
+			int i = random.nextInt(state.size());
+			if (state.isSelected(i) || state.fits(i))
+				state.flip(i);
+		}
+	}
+
+}
@@ -2,6 +2,8 @@ package problems.qbf;
 
 import java.io.IOException;
 
+import solutions.Solution;
+
 /**
  * Class representing the inverse of the Quadractic Binary Function
  * ({@link QBF}), which is used since the GRASP is set by
@@ -32,7 +34,83 @@ public class QBF_Inverse extends QBF {
 	public Double evaluateQBF() {
 		return -super.evaluateQBF();
 	}
+
+	/* (non-Javadoc)
+	 * @see problems.qbf.QBF#evaluateQBF(solutions.Solution)
+	 */
+	@Override
+	public Double evaluateQBF(Solution<Integer> sol) {
+		return -super.evaluateQBF(sol);
+	}
 	
+	/* (non-Javadoc)
+	 * @see problems.qbf.QBF#evaluatePackedQBF(long[])
+	 */
+	@Override
+	public double evaluatePackedQBF(long[] packed) {
+		return -super.evaluatePackedQBF(packed);
+	}
+
+	/* (non-Javadoc)
+	 * @see problems.qbf.QBF#evaluatePackedQBF(long[][])
+	 */
+	@Override
+	public double[] evaluatePackedQBF(long[][] batch) {
+		double[] values = super.evaluatePackedQBF(batch);
+		for (int c = 0; c < values.length; c++) {
+			values[c] = -values[c];
+		}
+		return values;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return -1.0, as the evaluator gives -f(x).
+	 */
+	@Override
+	public double sense() {
+		return -1.0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The inverse is bounded from above by the opposite of the lowest
+	 * contribution of each selected row, {@link #rowLowerBounds}.
+	 */
+	@Override
+	public Double upperBoundQBF(Solution<Integer> sol) {
+		double bound = 0.0;
+		for (Integer elem : sol) {
+			bound -= rowLowerBounds[elem];
+		}
+		return bound;
+	}
+
+	/* (non-Javadoc)
+	 * @see problems.qbf.QBF#evaluateBoundedQBF(solutions.Solution, double)
+	 */
+	@Override
+	public Double evaluateBoundedQBF(Solution<Integer> sol, double threshold) {
+		int k = sol.size();
+		int[] elems = new int[k];
+		for (int a = 0; a < k; a++) {
+			elems[a] = sol.get(a);
+		}
+		return evaluateBoundedQBF(elems, k, threshold, -1.0, rowLowerBounds);
+	}
+
+	/* (non-Javadoc)
+	 * @see problems.qbf.QBF#evaluateBoundedPackedQBF(long[], double)
+	 */
+	@Override
+	public double evaluateBoundedPackedQBF(long[] packed, double threshold) {
+		int[] elems = new int[size];
+		int k = unpack(packed, elems);
+		return evaluateBoundedQBF(elems, k, threshold, -1.0, rowLowerBounds);
+	}
+
 	/* (non-Javadoc)
 	 * @see problems.qbf.QBF#evaluateInsertion(int)
 	 */
@@ -57,4 +135,44 @@ public class QBF_Inverse extends QBF {
 		return -super.evaluateExchangeQBF(in,out);
 	}
 
+	/**
+	 * A main method checking the bounded evaluations of the inverse against
+	 * the exact ones on random selections of the instances given as
+	 * arguments: a bounded value must be the exact one, or an upper bound of
+	 * it below the threshold.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String[] files = args.length > 0 ? args : new String[] { "instances/kqbf/kqbf040", "instances/qbf/qbf100" };
+		java.util.Random random = new java.util.Random(0);
+		int failures = 0;
+		for (String file : files) {
+			QBF_Inverse inverse = new QBF_Inverse(file);
+			for (int t = 0; t < 10000; t++) {
+				long[] packed = new long[(inverse.size + 63) >>> 6];
+				Solution<Integer> sol = new Solution<Integer>();
+				double density = random.nextDouble();
+				for (int i = 0; i < inverse.size; i++) {
+					if (random.nextDouble() < density) {
+						packed[i >>> 6] |= 1L << i;
+						sol.add(i);
+					}
+				}
+				double exact = inverse.evaluateQBF(sol);
+				double threshold = exact + (random.nextDouble() - 0.5) * Math.max(1.0, Math.abs(exact));
+				double bounded = inverse.evaluateBoundedPackedQBF(packed, threshold);
+				double boundedSol = inverse.evaluateBoundedQBF(sol, threshold);
+				boolean ok = bounded == boundedSol && inverse.upperBoundQBF(sol) >= exact
+						&& (bounded == exact || (bounded >= exact && bounded < threshold));
+				if (!ok && failures++ < 10)
+					System.out.println(file + ": exact=" + exact + " threshold=" + threshold + " bounded=" + bounded
+							+ " upperBound=" + inverse.upperBoundQBF(sol));
+			}
+		}
+		System.out.println(failures == 0 ? "Bounded evaluations agree with the exact ones" : failures + " failures");
+		if (failures > 0)
+			System.exit(1);
+
+	}
+
 }
@@ -0,0 +1,221 @@
+package problems.qbf.solvers;
+
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import problems.qbf.QBF;
+import solutions.Solution;
+
+/**
+ * Exact solver for small (knapsack) QBF instances, giving certified optima
+ * against which the metaheuristics can be measured. The 2^n selections are
+ * enumerated in Gray-code order, so that consecutive selections differ by a
+ * single element, and the QBF value, the gains of the elements (see
+ * {@link problems.qbf.QBFGains}) and the loads are updated in O(n) per step.
+ *
+ * The enumeration is split into subtrees by fixing the last elements of the
+ * domain, and the subtrees are enumerated in parallel. The QBF maximized is
+ * f(x) = x'.A.x, in the same sense as {@link GA_QBF}.
+ */
+public class Exact_QBF {
+
+	/**
+	 * the largest domain size accepted: beyond it the enumeration would take
+	 * hours. The selections are held as bit masks in a long, so it can never
+	 * be raised past 63.
+	 */
+	public static final int MAX_SIZE = 40;
+
+	/**
+	 * The best feasible selection of a subtree, as a mask, and its cost.
+	 */
+	protected static final class Subtree {
+
+		final long mask;
+
+		final double cost;
+
+		Subtree(long mask, double cost) {
+			this.mask = mask;
+			this.cost = cost;
+		}
+	}
+
+	/**
+	 * the QBF being solved
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * the symmetric coupling matrix of the QBF (see {@link QBF#coupling}),
+	 * built densely since the domain is small
+	 */
+	protected final double[][] coupling;
+
+	/**
+	 * the number of elements fixed by each subtree
+	 */
+	protected final int fixed;
+
+	/**
+	 * Constructor for the Exact_QBF class.
+	 *
+	 * @param qbf
+	 *            The QBF being solved.
+	 * @param threads
+	 *            The expected number of threads, used for choosing how many
+	 *            subtrees the enumeration is split into.
+	 */
+	public Exact_QBF(QBF qbf, int threads) {
+		if (qbf.size > MAX_SIZE)
+			throw new IllegalArgumentException("Exact enumeration is limited to " + MAX_SIZE + " elements, got "
+					+ qbf.size);
+		this.qbf = qbf;
+		this.coupling = new double[qbf.size][qbf.size];
+		for (int i = 0; i < qbf.size; i++) {
+			for (int j = 0; j < qbf.size; j++) {
+				coupling[i][j] = qbf.coupling(i, j);
+			}
+		}
+		/* about 16 subtrees per thread, for balancing the load */
+		int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, threads) - 1) + 4;
+		this.fixed = Math.min(qbf.size, bits);
+	}
+
+	/**
+	 * Constructor for the Exact_QBF class, using every available processor.
+	 *
+	 * @param qbf
+	 *            The QBF being solved.
+	 */
+	public Exact_QBF(QBF qbf) {
+		this(qbf, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Enumerates every selection and returns the best feasible one.
+	 *
+	 * @return An optimal solution, with its cost and weight set, or null if
+	 *         no selection is feasible.
+	 */
+	public Solution<Integer> solve() {
+
+		Subtree best = IntStream.range(0, 1 << fixed).parallel()
+				.mapToObj(this::solveSubtree)
+				.reduce((a, b) -> b.cost > a.cost || (b.cost == a.cost && b.mask < a.mask) ? b : a)
+				.get();
+		if (best.cost == Double.NEGATIVE_INFINITY)
+			return null;
+
+		Solution<Integer> sol = new Solution<Integer>();
+		for (int i = 0; i < qbf.size; i++) {
+			if ((best.mask >>> i & 1L) != 0)
+				sol.add(i);
+		}
+		qbf.evaluate(sol);
+		return sol;
+	}
+
+	/**
+	 * Enumerates the selections of the free elements, the first n - f ones,
+	 * with the last f elements fixed by a prefix.
+	 *
+	 * @param prefix
+	 *            The selection of the fixed elements, bit k standing for
+	 *            element n - f + k.
+	 * @return The best feasible selection of the subtree and its cost; the
+	 *         cost is negative infinity when no selection is feasible.
+	 */
+	protected Subtree solveSubtree(int prefix) {
+
+		int n = qbf.size;
+		int free = n - fixed;
+		int d = qbf.constraints;
+		double[][] weights = qbf.constraintWeights;
+		double[] capacities = qbf.capacities;
+
+		long mask = 0L;
+		double cost = 0.0;
+		double[] load = new double[d];
+		for (int k = 0; k < fixed; k++) {
+			if ((prefix >>> k & 1) == 0)
+				continue;
+			int i = free + k;
+			cost += coupling[i][i];
+			for (int j = free; j < i; j++) {
+				if ((mask >>> j & 1L) != 0)
+					cost += coupling[i][j];
+			}
+			for (int r = 0; r < d; r++) {
+				load[r] += weights[r][i];
+			}
+			mask |= 1L << i;
+		}
+
+		double[] gain = new double[free];
+		for (int i = 0; i < free; i++) {
+			gain[i] = coupling[i][i];
+			for (int j = free; j < n; j++) {
+				if ((mask >>> j & 1L) != 0)
+					gain[i] += coupling[i][j];
+			}
+		}
+
+		long bestMask = mask;
+		double bestCost = fits(load, capacities) ? cost : Double.NEGATIVE_INFINITY;
+
+		long steps = 1L << free;
+		for (long step = 1; step < steps; step++) {
+			int e = Long.numberOfTrailingZeros(step);
+			double sign;
+			if ((mask >>> e & 1L) != 0) {
+				cost -= gain[e];
+				sign = -1.0;
+			} else {
+				cost += gain[e];
+				sign = 1.0;
+			}
+			mask ^= 1L << e;
+			for (int r = 0; r < d; r++) {
+				load[r] += sign * weights[r][e];
+			}
+
+			double[] row = coupling[e];
+			for (int j = 0; j < free; j++) {
+				gain[j] += sign * row[j];
+			}
+			gain[e] -= sign * row[e];
+
+			if (cost > bestCost && fits(load, capacities)) {
+				bestCost = cost;
+				bestMask = mask;
+			}
+		}
+
+		return new Subtree(bestMask, bestCost);
+	}
+
+	private static boolean fits(double[] load, double[] capacities) {
+		for (int r = 0; r < load.length; r++) {
+			if (load[r] > capacities[r])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A main method for solving the instances given as arguments.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String[] files = args.length > 0 ? args : new String[] { "instances/kqbf/kqbf020" };
+		for (String file : files) {
+			long startTime = System.currentTimeMillis();
+			Solution<Integer> opt = new Exact_QBF(new QBF(file)).solve();
+			System.out.println(file + " optimum = " + (opt == null ? "none, no selection is feasible" : opt));
+			System.out.println("Time = " + (double) (System.currentTimeMillis() - startTime) / (double) 1000 + " seg");
+		}
+
+	}
+
+}
@@ -4,12 +4,17 @@ import java.io.IOException;
 import metaheuristics.ga.AbstractGA;
 import metaheuristics.ga.AbstractGA.Chromosome;
 import metaheuristics.ga.AbstractGA.Population;
+import metaheuristics.util.SharedIncumbent;
+import problems.ProfilingEvaluator.Method;
 import problems.qbf.QBF;
+import problems.qbf.QBFGains;
 import solutions.Solution;
 import java.util.Collections;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 /**
  * Metaheuristic GA (Genetic Algorithm) for
  * obtaining an optimal solution to a QBF (Quadractive Binary Function --
@@ -19,6 +24,56 @@ import java.util.List;
  */
 public class GA_QBF extends AbstractGA<Integer, Integer> {
 
+	/**
+	 * the QBF being optimized, the same object as {@link #ObjFunction} unless
+	 * the evaluations are profiled; the bounds and the gain vectors are read
+	 * from it directly
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * the share of the initial population built by
+	 * {@link #constructGreedyRandomized}, the rest coming from the Latin
+	 * hypercube
+	 */
+	protected double graspShare = 0.0;
+
+	/**
+	 * the greediness of the constructions: the restricted candidate list
+	 * holds the candidates whose score is within alpha times the score range
+	 * of the best one, so 0 is purely greedy and 1 purely random
+	 */
+	protected double graspAlpha = 0.2;
+
+	/**
+	 * the smallest domain for which the populations are evaluated by the
+	 * cache-blocked {@link QBF#evaluatePackedQBF(long[][])}
+	 */
+	public static final int TILED_MIN_SIZE = 4096;
+
+	/**
+	 * flag that indicates whether the populations are evaluated by the
+	 * cache-blocked {@link QBF#evaluatePackedQBF(long[][])}, by default only
+	 * when the domain has at least {@link #TILED_MIN_SIZE} elements
+	 */
+	protected boolean tiledEvaluation;
+
+	/**
+	 * the incumbent shared with other solvers, or null when running alone
+	 * (see {@link #migrate})
+	 */
+	protected SharedIncumbent<Solution<Integer>> incumbent;
+
+	/**
+	 * the name under which the solutions are offered to the incumbent
+	 */
+	protected String incumbentName = "GA";
+
+	/**
+	 * the version of the incumbent last brought into the population
+	 */
+	protected long incumbentVersion = 0;
+
 	/**
 	 * Constructor for the GA_QBF class. The QBF objective function is passed as
 	 * argument for the superclass constructor.
@@ -36,7 +91,25 @@ public class GA_QBF extends AbstractGA<Integer, Integer> {
 	 *             Necessary for I/O operations.
 	 */
 	public GA_QBF(Integer timeToRun, Integer popSize, Double mutationRate, String filename) throws IOException {
-		super(new QBF(filename), timeToRun, popSize, mutationRate);
+		this(timeToRun, popSize, mutationRate, new QBF(filename));
+	}
+
+	/**
+	 * Constructor for the GA_QBF class over an already loaded QBF.
+	 * 
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 * @param popSize
+	 *            Size of the population.
+	 * @param mutationRate
+	 *            The mutation rate.
+	 * @param qbf
+	 *            The QBF objective function.
+	 */
+	public GA_QBF(Integer timeToRun, Integer popSize, Double mutationRate, QBF qbf) {
+		super(qbf, timeToRun, popSize, mutationRate);
+		this.qbf = qbf;
+		this.tiledEvaluation = qbf.size >= TILED_MIN_SIZE;
 	}
 
 	/**
@@ -81,91 +154,221 @@ public class GA_QBF extends AbstractGA<Integer, Integer> {
 	 */
 	@Override
 	protected Chromosome generateRandomChromosome() {
-		
-		
 
-        Double pesos[] = ObjFunction.getPesos();
-        Integer pesoMaximo = ObjFunction.getPesoMax();
-        
 		Chromosome chromosome = new Chromosome();
-		
-		int currentPeso = 0;
+		for (int i = 0; i < chromosomeSize; i++) {
+			chromosome.add(0);
+		}
 		
 		//Gera lista aleat�ria para n�o ficar tendendo a pegar sempre os primeiros
 		Integer[] possiveis = new Integer[chromosomeSize];
-		Integer[] chromosomoTemp = new Integer[chromosomeSize];
 		
 		for (int i = 0; i < chromosomeSize; i++) {
 			possiveis[i] = i;
-			chromosomoTemp[i] = 0;
 		}
 		
 		List<Integer> lista = Arrays.asList(possiveis);
 
         // Embaralha a lista
-        Collections.shuffle(lista);
+        Collections.shuffle(lista, rng);
 
-        // Converte a lista embaralhada de volta para um array
-        Integer[] vetorEmbaralhado = lista.toArray(new Integer[0]);
-				
-		
-		for (int i : vetorEmbaralhado) {
+		for (int i : lista) {
 			int escolha = rng.nextInt(2);
-			if(escolha == 1) {
-				if(currentPeso + pesos[i] <= pesoMaximo) {
-					currentPeso += pesos[i];
-					chromosomoTemp[i] = escolha;
-				} else {
-					chromosomoTemp[i] = 0;
-				}
-			} else {				
-				chromosomoTemp[i] = 0;
+			if(escolha == 1 && chromosome.fits(i)) {
+				chromosome.set(i, 1);
 			}
 		}
-		
-		for (int i = 0; i < chromosomeSize; i++) {
-			chromosome.add(chromosomoTemp[i]);
-		}
 
 		return chromosome;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * Each locus is a column of the Latin hypercube in which half of the
+	 * chromosomes (rounded down) receive a 1. The chromosomes receiving it are
+	 * drawn by a partial Fisher-Yates shuffle over a primitive array, and their
+	 * bits are written straight into the chromosomes packed 64 loci to a long.
+	 * The chromosomes are then filled from their words (see
+	 * {@link Chromosome#fill}) and repaired in parallel, each one with
+	 * its own generator seeded from {@link #rng}, so the result does not depend
+	 * on the number of threads.
+	 */
 	@Override
 	protected Population initializePopulationLatinHypercube() {
 
-		Population population = new Population();
-		ArrayList<Chromosome> cList = new ArrayList<Chromosome>(popSize);
-		ArrayList<Integer> column = new ArrayList<Integer>(Collections.nCopies(popSize, 0));
-		
-		for(int i = 0; i < popSize; i++) {
-			column.set(i, i % 2);
-			cList.add(new Chromosome());
+		int words = (chromosomeSize + 63) >>> 6;
+		long[][] bits = new long[popSize][words];
+		int[] order = new int[popSize];
+		for (int j = 0; j < popSize; j++) {
+			order[j] = j;
 		}
 
-		for(int i = 0; i < chromosomeSize; i++) {
-			Collections.shuffle(column);
-			for(int j = 0; j < popSize; j++) {
-				cList.get(j).add(column.get(j));
+		int ones = popSize / 2;
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			int w = locus >>> 6;
+			long bit = 1L << locus;
+			for (int k = 0; k < ones; k++) {
+				int r = k + rng.nextInt(popSize - k);
+				int chosen = order[r];
+				order[r] = order[k];
+				order[k] = chosen;
+				bits[chosen][w] |= bit;
 			}
 		}
-		
-		for(Chromosome c : cList) {
-			makeCromosomeFeasible(c);
-			population.add(c);
+
+		long[] seeds = new long[popSize];
+		for (int j = 0; j < popSize; j++) {
+			seeds[j] = rng.nextLong();
 		}
 
+		Population population = new Population();
+		population.addAll(Collections.nCopies(popSize, null));
+		IntStream.range(0, popSize).parallel().forEach(j -> {
+			Chromosome c = new Chromosome();
+			c.fill(bits[j]);
+			population.set(j, makeCromosomeFeasible(c, new SplittableRandom(seeds[j])));
+		});
+
 		return population;
 
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * When {@link #graspShare} is positive, that share of the Latin hypercube
+	 * population is replaced by greedy-randomized constructions, built in
+	 * parallel, each one with its own generator seeded from {@link #rng}.
+	 */
+	@Override
+	protected Population initialPopulation() {
+
+		if (seedPopulation != null || graspShare <= 0)
+			return super.initialPopulation();
+
+		Population population = initializePopulationLatinHypercube();
+		int count = (int) Math.min(popSize, Math.round(graspShare * popSize));
+		long[] seeds = new long[count];
+		for (int j = 0; j < count; j++) {
+			seeds[j] = rng.nextLong();
+		}
+		IntStream.range(0, count).parallel()
+				.forEach(j -> population.set(j, constructGreedyRandomized(new SplittableRandom(seeds[j]))));
+
+		return population;
+	}
+
+	/**
+	 * Builds a chromosome in the GRASP fashion. Starting from the empty
+	 * solution, each step considers the elements that fit and improve the
+	 * value of the evaluator, scores them by their insertion delta per unit of weight (the
+	 * weights of every dimension being taken relative to its capacity), and
+	 * inserts one drawn from the restricted candidate list (see
+	 * {@link #graspAlpha}). The deltas are read from the gain vector of a
+	 * {@link QBFGains}, so a construction of k steps costs O(n.k).
+	 * 
+	 * @param random
+	 *            The generator of the choices.
+	 * @return A feasible chromosome.
+	 */
+	protected Chromosome constructGreedyRandomized(SplittableRandom random) {
+
+		double[] unitWeight = new double[chromosomeSize];
+		for (int i = 0; i < chromosomeSize; i++) {
+			for (int r = 0; r < constraintCount; r++) {
+				unitWeight[i] += qbf.constraintWeights[r][i] / qbf.capacities[r];
+			}
+		}
+
+		boolean weighted = false;
+		for (double w : unitWeight) {
+			weighted |= w > 0;
+		}
+
+		QBFGains state = new QBFGains(qbf);
+		double[] score = new double[chromosomeSize];
+		int[] candidates = new int[chromosomeSize];
+
+		while (true) {
+			int nCandidates = 0;
+			double best = Double.NEGATIVE_INFINITY, worst = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < chromosomeSize; i++) {
+				double delta = state.insertionDelta(i);
+				if (state.isSelected(i) || delta <= 0 || !state.fits(i))
+					continue;
+				/* without weights (unconstrained QBF) the delta alone ranks */
+				score[i] = !weighted ? delta : unitWeight[i] > 0 ? delta / unitWeight[i] : Double.MAX_VALUE;
+				best = Math.max(best, score[i]);
+				worst = Math.min(worst, score[i]);
+				candidates[nCandidates++] = i;
+			}
+			if (nCandidates == 0)
+				break;
+
+			double threshold = best - graspAlpha * (best - worst);
+			int nRestricted = 0;
+			for (int m = 0; m < nCandidates; m++) {
+				if (score[candidates[m]] >= threshold)
+					candidates[nRestricted++] = candidates[m];
+			}
+			state.flip(candidates[random.nextInt(nRestricted)]);
+		}
+
+		Chromosome chromosome = new Chromosome();
+		chromosome.ensureCapacity(chromosomeSize);
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			chromosome.add(state.isSelected(locus) ? 1 : 0);
+		}
+		return chromosome;
+	}
+
+	public void setGraspShare(double graspShare) {
+		this.graspShare = graspShare;
+	}
+
+	public void setGraspAlpha(double graspAlpha) {
+		this.graspAlpha = graspAlpha;
+	}
+
 	// if a chromosome violates the knapsack restriction, remove random items from it until it is feasible
 	protected Chromosome makeCromosomeFeasible(Chromosome c) {
-		Integer pesoMaximo = ObjFunction.getPesoMax();
-		while(ObjFunction.solutionWeight(decode(c)) > pesoMaximo) {
+		while(!c.isFeasible()) {
 			removeRandomElementFromChromosome(c);
 		}
 		return c;
 	}
+
+	/**
+	 * Removes random selected genes from a chromosome until it respects the
+	 * knapsack capacities. The selected loci are listed once and drawn without
+	 * replacement, and the weight is tracked by the chromosome, so each
+	 * removal is O(1) besides the feasibility check.
+	 * 
+	 * @param c
+	 *            The chromosome being repaired.
+	 * @param random
+	 *            The generator of the removals.
+	 * @return The feasible chromosome.
+	 */
+	protected Chromosome makeCromosomeFeasible(Chromosome c, SplittableRandom random) {
+		if (c.isFeasible())
+			return c;
+
+		int[] selected = new int[chromosomeSize];
+		int count = 0;
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			if (c.get(locus) == 1)
+				selected[count++] = locus;
+		}
+
+		while (!c.isFeasible()) {
+			int r = random.nextInt(count);
+			c.set(selected[r], 0);
+			selected[r] = selected[--count];
+		}
+		return c;
+	}
 	
 	protected Chromosome removeRandomElementFromChromosome(Chromosome c) {
 		ArrayList<Integer> currentElements = new ArrayList<Integer>();
@@ -179,19 +382,161 @@ public class GA_QBF extends AbstractGA<Integer, Integer> {
 	}
 	
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * {@inheritDoc}
 	 * 
-	 * @see metaheuristics.ga.AbstractGA#fitness(metaheuristics.ga.AbstractGA.
-	 * Chromosome)
+	 * The chromosome is packed 64 loci to a long and evaluated with
+	 * {@link QBF#evaluatePackedQBF(long[])}, without building a solution.
+	 * When the evaluations are profiled, the profiler is told about them.
 	 */
 	@Override
 	protected Double fitness(Chromosome chromosome) {
 
-		return decode(chromosome).cost;
+		if (profiler == null)
+			return qbf.evaluatePackedQBF(pack(chromosome));
+
+		long start = profiler.begin();
+		double fitness = qbf.evaluatePackedQBF(pack(chromosome));
+		profiler.record(Method.EVALUATE, 1, start);
+		return fitness;
 
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The packed chromosome is evaluated with
+	 * {@link QBF#evaluateBoundedPackedQBF(long[], double)}, which costs O(k^2)
+	 * for k selected loci and stops early when the row bounds show the
+	 * threshold cannot be exceeded.
+	 */
+	@Override
+	protected Double boundedFitness(Chromosome chromosome, double threshold) {
+
+		if (profiler == null)
+			return qbf.evaluateBoundedPackedQBF(pack(chromosome), threshold);
+
+		long start = profiler.begin();
+		double fitness = qbf.evaluateBoundedPackedQBF(pack(chromosome), threshold);
+		profiler.record(Method.EVALUATE, 1, start);
+		return fitness;
+
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * With {@link #tiledEvaluation} the chromosomes are packed and evaluated
+	 * together by {@link QBF#evaluatePackedQBF(long[][])}, which streams each
+	 * block of coefficients once for the whole batch.
+	 */
+	@Override
+	protected double[] fitnessBatch(List<Chromosome> chromosomes) {
+
+		if (!tiledEvaluation)
+			return super.fitnessBatch(chromosomes);
+
+		long[][] batch = new long[chromosomes.size()][];
+		for (int c = 0; c < batch.length; c++) {
+			batch[c] = pack(chromosomes.get(c));
+		}
+		if (profiler == null)
+			return qbf.evaluatePackedQBF(batch);
+
+		long start = profiler.begin();
+		double[] values = qbf.evaluatePackedQBF(batch);
+		profiler.record(Method.EVALUATE, batch.length, start);
+		return values;
+
+	}
+
+	public void setTiledEvaluation(boolean tiledEvaluation) {
+		this.tiledEvaluation = tiledEvaluation;
+	}
+
+	/**
+	 * Makes the GA cooperate with other solvers through a shared incumbent.
+	 * 
+	 * @param incumbent
+	 *            The shared incumbent.
+	 * @param name
+	 *            The name of this GA among the solvers.
+	 */
+	public void setIncumbent(SharedIncumbent<Solution<Integer>> incumbent, String name) {
+		this.incumbent = incumbent;
+		this.incumbentName = name;
+		this.incumbentVersion = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * With a shared {@link #incumbent}, the best solution of the GA is offered
+	 * to it, and an incumbent found by another solver since the last
+	 * generation, if better than the best solution of the GA, replaces the
+	 * worst chromosome of the population (and enters the elite archive).
+	 */
+	@Override
+	protected void migrate(Population population, long generation) {
+
+		if (incumbent == null)
+			return;
+
+		boolean feasible = bestChromosome.isFeasible();
+		if (feasible && bestSol.cost > incumbent.getCost()) {
+			SharedIncumbent.Snapshot<Solution<Integer>> installed = incumbent.offer(new Solution<Integer>(bestSol),
+					bestSol.cost, incumbentName);
+			if (installed != null)
+				incumbentVersion = installed.version;
+		}
+
+		SharedIncumbent.Snapshot<Solution<Integer>> snapshot = incumbent.get();
+		if (snapshot.version == incumbentVersion)
+			return;
+		incumbentVersion = snapshot.version;
+		if (feasible && !(snapshot.cost > bestSol.cost))
+			return;
+
+		Chromosome immigrant = encode(snapshot.solution);
+		population.remove(getWorseChromosome(population));
+		population.add(immigrant);
+		elite.offer(immigrant, cachedFitness(immigrant));
+	}
+
+	/**
+	 * Builds the chromosome of a solution.
+	 * 
+	 * @param sol
+	 *            The solution.
+	 * @return The chromosome selecting the elements of the solution.
+	 */
+	protected Chromosome encode(Solution<Integer> sol) {
+
+		Chromosome chromosome = new Chromosome();
+		chromosome.ensureCapacity(chromosomeSize);
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			chromosome.add(0);
+		}
+		for (Integer elem : sol) {
+			chromosome.set(elem, 1);
+		}
+		return chromosome;
+
+	}
+
+	/**
+	 * Packs the genes of a chromosome, bit i of word i / 64 being the gene of
+	 * locus i. The array is the one cached by the chromosome (see
+	 * {@link Chromosome#getPacked}) and must not be modified.
+	 * 
+	 * @param chromosome
+	 *            The chromosome.
+	 * @return The packed genes.
+	 */
+	protected long[] pack(Chromosome chromosome) {
+		return chromosome.getPacked();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -201,13 +546,9 @@ public class GA_QBF extends AbstractGA<Integer, Integer> {
 	 */
 	@Override
 	protected void mutateGene(Chromosome chromosome, Integer locus) {
-		var pesoAtual = chromosome.GetCurrentPeso();
-		int pesoMaximo = ObjFunction.getPesoMax();
-		Double pesos[] = ObjFunction.getPesos();
-		
 		int valorAtual = chromosome.get(locus);
 		
-		if(valorAtual == 0 && ((pesoAtual + pesos[locus]) <= pesoMaximo)) {
+		if(valorAtual == 0 && canSet(chromosome, locus)) {
 			chromosome.set(locus, 1);
 		} else {
 			chromosome.set(locus, 0);
@@ -215,6 +556,75 @@ public class GA_QBF extends AbstractGA<Integer, Integer> {
 
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * At each step, among the loci in which the current chromosome still
+	 * differs from the target, the move with the best insertion or removal
+	 * delta is applied, insertions being considered only if they respect the
+	 * knapsack capacity. The deltas are read in O(1) from the gain vector of a
+	 * {@link QBFGains}, which is updated in O(n) after each step; they follow
+	 * the sense of the evaluator, so the walk keeps the intermediate
+	 * chromosome the GA values most, also for a
+	 * {@link problems.qbf.QBF_Inverse}. The walk stops when no move is left,
+	 * or when only insertions that do not fit remain.
+	 */
+	@Override
+	protected Chromosome pathRelink(Chromosome source, Chromosome target) {
+
+		int[] differing = new int[chromosomeSize];
+		int nDiffering = 0;
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			if (!source.get(locus).equals(target.get(locus)))
+				differing[nDiffering++] = locus;
+		}
+
+		QBFGains state = new QBFGains(qbf, decode(source));
+
+		double bestCost = Double.NEGATIVE_INFINITY;
+		boolean[] bestSelection = null;
+
+		/* the last step would reach the target itself */
+		while (nDiffering > 1) {
+			int bestMove = -1;
+			double bestDelta = Double.NEGATIVE_INFINITY;
+			for (int m = 0; m < nDiffering; m++) {
+				int locus = differing[m];
+				if (!state.isSelected(locus) && !state.fits(locus))
+					continue;
+				double delta = state.flipDelta(locus);
+				if (delta > bestDelta) {
+					bestDelta = delta;
+					bestMove = m;
+				}
+			}
+			if (bestMove < 0)
+				break;
+
+			int locus = differing[bestMove];
+			differing[bestMove] = differing[--nDiffering];
+			state.flip(locus);
+
+			if (state.getCost() > bestCost) {
+				bestCost = state.getCost();
+				bestSelection = new boolean[chromosomeSize];
+				for (int i = 0; i < chromosomeSize; i++) {
+					bestSelection[i] = state.isSelected(i);
+				}
+			}
+		}
+
+		if (bestSelection == null)
+			return null;
+
+		Chromosome relinked = new Chromosome();
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			relinked.add(bestSelection[locus] ? 1 : 0);
+		}
+
+		return relinked;
+	}
+
 	/**
 	 * A main method used for testing the GA metaheuristic.
 	 * 
@@ -0,0 +1,495 @@
+package problems.qbf.solvers;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import metaheuristics.ga.AbstractGA;
+import problems.qbf.QBF;
+import solutions.Solution;
+
+/**
+ * Performance regression suite for {@link GA_QBF}. Every configured instance
+ * is solved with every configured seed, and each run is measured:
+ *
+ * - the best cost reached at fixed fractions of a budget of generations (the
+ *   checkpoints of the quality curve), the whole curve being written to a
+ *   CSV file with the generation and the elapsed time of each improvement;
+ * - the fitness evaluations per second;
+ * - the bytes allocated, per second and per evaluation, from the
+ *   {@code com.sun.management.ThreadMXBean} counters of the live threads;
+ * - the peak heap usage, from the heap memory pools.
+ *
+ * Every random choice of a run derives from its seed, through the generator
+ * of the GA (which also seeds the generators of the repair and of the greedy
+ * randomized constructions), and the quality is measured on generations
+ * rather than on time, so the costs at the checkpoints do not depend on the
+ * speed of the machine nor on its load. The time limit only caps the runs: a
+ * checkpoint the run did not reach within it is reported as a regression.
+ *
+ * The measures are compared with those of a golden baseline file, recorded
+ * by an earlier run on the same machine, and every measure worse than the
+ * baseline by more than its tolerance is reported as a regression; the
+ * allocations are compared per evaluation, so that a faster GA is not
+ * reported for allocating more per second. When the golden file does not
+ * exist, or with the --record option, the measures are recorded as the new
+ * baseline instead.
+ *
+ * The recognized keys, with their defaults, are:
+ *
+ * instances           = instances/qbf/*, instances/kqbf/*
+ * generations         = 1000         (generations per run)
+ * timeToRun           = 60000        (milliseconds, at most, per run)
+ * popSize             = 100
+ * mutationRate        = 0.01
+ * seeds               = 0
+ * checkpoints         = 0.1, 0.25, 0.5, 1.0   (fractions of generations)
+ * warmup              = 2000         (milliseconds of a discarded first run)
+ * golden              = regression/golden.csv
+ * curves              = regression/curves.csv
+ * qualityTolerance    = 0.01         (relative cost loss at a checkpoint)
+ * throughputTolerance = 0.2          (relative loss of evaluations per second)
+ * allocationTolerance = 0.25         (relative growth of bytes per evaluation)
+ * heapTolerance       = 0.5          (relative growth of the peak heap)
+ *
+ * Usage: java problems.qbf.solvers.GA_QBF_Regression regression.properties [--record]
+ *
+ * The process exits with status 1 when a regression is found.
+ */
+public class GA_QBF_Regression extends GA_QBF_Runner {
+
+	/**
+	 * The measures of one run.
+	 */
+	protected static class Measures {
+
+		protected final String instance;
+
+		protected final long seed;
+
+		/**
+		 * the best cost at each checkpoint
+		 */
+		protected final double[] costs;
+
+		/**
+		 * the number of generations run, less than the budget if the time
+		 * limit was hit
+		 */
+		protected long generations;
+
+		protected double evalsPerSec;
+
+		protected double allocMBps;
+
+		protected double bytesPerEval;
+
+		protected double peakHeapMB;
+
+		protected Measures(String instance, long seed, int checkpoints) {
+			this.instance = instance;
+			this.seed = seed;
+			this.costs = new double[checkpoints];
+		}
+
+		protected String key() {
+			return instance + "#" + seed;
+		}
+	}
+
+	/**
+	 * A GA_QBF that counts its fitness evaluations and keeps the generation
+	 * and the time of each improvement of its best solution.
+	 */
+	protected static class MeasuredGA extends GA_QBF {
+
+		protected long evaluations;
+
+		protected long startNanos;
+
+		protected long generations;
+
+		/**
+		 * the improvements, as triples of generation, elapsed milliseconds and
+		 * cost
+		 */
+		protected final List<double[]> curve = new ArrayList<double[]>();
+
+		protected MeasuredGA(Integer timeToRun, Integer popSize, Double mutationRate, QBF qbf) {
+			super(timeToRun, popSize, mutationRate, qbf);
+		}
+
+		@Override
+		public Solution<Integer> solve() {
+			startNanos = System.nanoTime();
+			return super.solve();
+		}
+
+		@Override
+		protected Double fitness(Chromosome chromosome) {
+			evaluations++;
+			return super.fitness(chromosome);
+		}
+
+		@Override
+		protected Double boundedFitness(Chromosome chromosome, double threshold) {
+			evaluations++;
+			return super.boundedFitness(chromosome, threshold);
+		}
+
+		@Override
+		protected double[] fitnessBatch(List<Chromosome> chromosomes) {
+			/* the tiled path does not go through fitness */
+			if (tiledEvaluation)
+				evaluations += chromosomes.size();
+			return super.fitnessBatch(chromosomes);
+		}
+
+		@Override
+		protected void publishImprovement(long generation) {
+			super.publishImprovement(generation);
+			curve.add(new double[] { generation, (System.nanoTime() - startNanos) / 1e6, bestSol.cost });
+		}
+
+		@Override
+		protected void publishResult(long generations, long elapsed) {
+			super.publishResult(generations, elapsed);
+			this.generations = generations;
+		}
+	}
+
+	/**
+	 * flag that indicates whether the measures are recorded as the new
+	 * baseline
+	 */
+	protected boolean record;
+
+	/**
+	 * Constructor for the GA_QBF_Regression class.
+	 *
+	 * @param config
+	 *            The suite configuration.
+	 * @param record
+	 *            Whether the measures are recorded as the new baseline.
+	 */
+	public GA_QBF_Regression(Properties config, boolean record) {
+		super(config);
+		this.record = record;
+	}
+
+	/**
+	 * Runs the suite and compares its measures with the golden baseline, or
+	 * records them.
+	 *
+	 * @return The number of regressions found.
+	 * @throws IOException
+	 *             If an instance, the baseline or the curves cannot be read or
+	 *             written.
+	 */
+	public int check() throws IOException {
+
+		List<String> files = expandInstances(list("instances", "instances/qbf/*, instances/kqbf/*"));
+		long generations = Long.parseLong(config.getProperty("generations", "1000").trim());
+		int timeToRun = Integer.parseInt(config.getProperty("timeToRun", "60000").trim());
+		int popSize = Integer.parseInt(config.getProperty("popSize", "100").trim());
+		double mutationRate = Double.parseDouble(config.getProperty("mutationRate", "0.01").trim());
+		List<String> seeds = list("seeds", "0");
+		List<String> checkpointValues = list("checkpoints", "0.1, 0.25, 0.5, 1.0");
+		int warmup = Integer.parseInt(config.getProperty("warmup", "2000").trim());
+		String golden = config.getProperty("golden", "regression/golden.csv").trim();
+		String curves = config.getProperty("curves", "regression/curves.csv").trim();
+
+		if (files.isEmpty())
+			throw new IOException("No instance matches " + config.getProperty("instances"));
+
+		double[] checkpoints = new double[checkpointValues.size()];
+		for (int c = 0; c < checkpoints.length; c++) {
+			checkpoints[c] = Double.parseDouble(checkpointValues.get(c));
+		}
+
+		if (warmup > 0)
+			new GA_QBF(warmup, popSize, mutationRate, load(files.get(0))).solve();
+
+		List<Measures> runs = new ArrayList<Measures>();
+		createParent(curves);
+		try (PrintWriter curveCsv = new PrintWriter(new FileWriter(curves))) {
+			curveCsv.println("instance,seed,generation,elapsedMs,cost");
+			for (String file : files)
+				for (String seed : seeds) {
+					Measures m = measure(file, Long.parseLong(seed), generations, timeToRun, popSize, mutationRate,
+							checkpoints, curveCsv);
+					runs.add(m);
+					System.out.printf(Locale.ROOT, "%s seed=%d cost=%.1f generations=%d evals/s=%.0f alloc=%.1fMB/s (%.0fB/eval) peakHeap=%.1fMB%n",
+							m.instance, m.seed, m.costs[m.costs.length - 1], m.generations, m.evalsPerSec,
+							m.allocMBps, m.bytesPerEval, m.peakHeapMB);
+				}
+		}
+
+		if (record || !Files.exists(Paths.get(golden))) {
+			writeBaseline(golden, checkpointValues, runs);
+			System.out.println("Baseline recorded in " + golden);
+			return 0;
+		}
+
+		return compare(readBaseline(golden), checkpointValues, runs);
+	}
+
+	/**
+	 * Solves an instance with a seed for a budget of generations and measures
+	 * the run. The cost at a checkpoint the run did not reach is NaN.
+	 */
+	protected Measures measure(String file, long seed, long generations, int timeToRun, int popSize,
+			double mutationRate, double[] checkpoints, PrintWriter curveCsv) throws IOException {
+
+		QBF qbf = load(file);
+		MeasuredGA ga = new MeasuredGA(timeToRun, popSize, mutationRate, qbf);
+		ga.setSeed(seed);
+		ga.setMaxGenerations(generations);
+
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		Map<Long, Long> allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+
+		ga.solve();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		Map<Long, Long> allocatedAfter = allocatedBytes();
+
+		Measures m = new Measures(file, seed, checkpoints.length);
+		m.generations = ga.generations;
+		if (m.generations < generations)
+			System.out.println("WARNING    " + file + " seed=" + seed + " stopped by the time limit at generation "
+					+ m.generations + " of " + generations);
+		for (int c = 0; c < checkpoints.length; c++) {
+			long limit = Math.round(checkpoints[c] * generations);
+			m.costs[c] = Double.NaN;
+			if (limit > m.generations)
+				continue;
+			/* the first point, of generation 0, always qualifies */
+			for (double[] point : ga.curve) {
+				if (point[0] <= limit)
+					m.costs[c] = point[2];
+			}
+		}
+
+		m.evalsPerSec = ga.evaluations / seconds;
+
+		if (allocatedBefore == null || allocatedAfter == null) {
+			m.allocMBps = Double.NaN;
+			m.bytesPerEval = Double.NaN;
+		} else {
+			long bytes = 0;
+			for (Map.Entry<Long, Long> e : allocatedAfter.entrySet()) {
+				bytes += e.getValue() - allocatedBefore.getOrDefault(e.getKey(), 0L);
+			}
+			m.allocMBps = bytes / seconds / (1 << 20);
+			m.bytesPerEval = ga.evaluations == 0 ? Double.NaN : (double) bytes / ga.evaluations;
+		}
+
+		long peak = 0;
+		for (MemoryPoolMXBean pool : heapPools) {
+			peak += pool.getPeakUsage().getUsed();
+		}
+		m.peakHeapMB = (double) peak / (1 << 20);
+
+		for (double[] point : ga.curve) {
+			curveCsv.println(file + "," + seed + "," + (long) point[0] + ","
+					+ String.format(Locale.ROOT, "%.3f", point[1]) + "," + point[2]);
+		}
+		curveCsv.flush();
+
+		return m;
+	}
+
+	/**
+	 * Gives the bytes allocated so far by each live thread, or null if the
+	 * JVM does not count them.
+	 */
+	protected static Map<Long, Long> allocatedBytes() {
+
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return null;
+
+		long[] ids = threads.getAllThreadIds();
+		long[] bytes = threads.getThreadAllocatedBytes(ids);
+		Map<Long, Long> allocated = new HashMap<Long, Long>();
+		for (int t = 0; t < ids.length; t++) {
+			if (bytes[t] >= 0)
+				allocated.put(ids[t], bytes[t]);
+		}
+		return allocated;
+	}
+
+	/**
+	 * Compares the measures of the runs with the baseline, printing every
+	 * regression. A checkpoint is compared only if the baseline reached it
+	 * with a finite cost; not reaching it then is a regression.
+	 *
+	 * @return The number of regressions.
+	 */
+	protected int compare(Map<String, Map<String, Double>> baseline, List<String> checkpoints, List<Measures> runs) {
+
+		double qualityTolerance = Double.parseDouble(config.getProperty("qualityTolerance", "0.01").trim());
+		double throughputTolerance = Double.parseDouble(config.getProperty("throughputTolerance", "0.2").trim());
+		double allocationTolerance = Double.parseDouble(config.getProperty("allocationTolerance", "0.25").trim());
+		double heapTolerance = Double.parseDouble(config.getProperty("heapTolerance", "0.5").trim());
+
+		int regressions = 0;
+		for (Measures m : runs) {
+			Map<String, Double> g = baseline.get(m.key());
+			if (g == null) {
+				System.out.println("NEW        " + m.instance + " seed=" + m.seed + " has no baseline");
+				continue;
+			}
+			for (int c = 0; c < checkpoints.size(); c++) {
+				Double expected = g.get("cost@" + checkpoints.get(c));
+				if (expected == null || Double.isNaN(expected) || Double.isInfinite(expected))
+					continue;
+				double cost = m.costs[c];
+				if (Double.isNaN(cost)) {
+					System.out.printf(Locale.ROOT, "REGRESSION %s seed=%d cost@%s not reached (baseline %.2f)%n",
+							m.instance, m.seed, checkpoints.get(c), expected);
+					regressions++;
+				} else if (cost < expected - qualityTolerance * Math.abs(expected)) {
+					regressions += report(m, "cost@" + checkpoints.get(c), cost, expected);
+				}
+			}
+			Double evals = g.get("evalsPerSec");
+			if (evals != null && m.evalsPerSec < evals * (1.0 - throughputTolerance))
+				regressions += report(m, "evalsPerSec", m.evalsPerSec, evals);
+			Double bytes = g.get("bytesPerEval");
+			if (bytes != null && m.bytesPerEval > bytes * (1.0 + allocationTolerance))
+				regressions += report(m, "bytesPerEval", m.bytesPerEval, bytes);
+			Double heap = g.get("peakHeapMB");
+			if (heap != null && m.peakHeapMB > heap * (1.0 + heapTolerance))
+				regressions += report(m, "peakHeapMB", m.peakHeapMB, heap);
+		}
+
+		System.out.println(regressions == 0 ? "No regression against the baseline"
+				: regressions + " regression(s) against the baseline");
+		return regressions;
+	}
+
+	private static int report(Measures m, String measure, double value, double expected) {
+		System.out.printf(Locale.ROOT, "REGRESSION %s seed=%d %s=%.2f (baseline %.2f)%n", m.instance, m.seed, measure,
+				value, expected);
+		return 1;
+	}
+
+	/**
+	 * Writes the measures of the runs as the golden baseline.
+	 */
+	protected void writeBaseline(String golden, List<String> checkpoints, List<Measures> runs) throws IOException {
+
+		createParent(golden);
+		try (PrintWriter csv = new PrintWriter(new FileWriter(golden))) {
+			StringBuilder header = new StringBuilder("instance,seed");
+			for (String checkpoint : checkpoints) {
+				header.append(",cost@").append(checkpoint);
+			}
+			csv.println(header.append(",generations,evalsPerSec,allocMBps,bytesPerEval,peakHeapMB"));
+			for (Measures m : runs) {
+				StringBuilder line = new StringBuilder(m.instance).append(',').append(m.seed);
+				for (double cost : m.costs) {
+					line.append(',').append(cost);
+				}
+				line.append(String.format(Locale.ROOT, ",%d,%.1f,%.3f,%.3f,%.3f", m.generations, m.evalsPerSec,
+						m.allocMBps, m.bytesPerEval, m.peakHeapMB));
+				csv.println(line);
+			}
+		}
+	}
+
+	/**
+	 * Reads the golden baseline.
+	 *
+	 * @return The measures of each run, by instance and seed, and then by
+	 *         column name.
+	 */
+	protected static Map<String, Map<String, Double>> readBaseline(String golden) throws IOException {
+
+		Map<String, Map<String, Double>> baseline = new HashMap<String, Map<String, Double>>();
+		try (BufferedReader in = new BufferedReader(new FileReader(golden))) {
+			String first = in.readLine();
+			if (first == null)
+				return baseline;
+			String[] header = first.split(",");
+			int lineNumber = 1;
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				lineNumber++;
+				if (line.trim().isEmpty())
+					continue;
+				String[] fields = line.split(",");
+				if (fields.length != header.length)
+					throw new IOException(golden + ":" + lineNumber + ": expected " + header.length + " fields, got "
+							+ fields.length);
+				Map<String, Double> values = new LinkedHashMap<String, Double>();
+				for (int f = 2; f < fields.length; f++) {
+					values.put(header[f], Double.parseDouble(fields[f]));
+				}
+				baseline.put(fields[0] + "#" + Long.parseLong(fields[1]), values);
+			}
+		}
+		return baseline;
+	}
+
+	private static void createParent(String file) throws IOException {
+		Path parent = Paths.get(file).toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+	}
+
+	/**
+	 * The command-line entry point.
+	 *
+	 * @param args
+	 *            The path of the configuration file, optionally followed by
+	 *            --record.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1 || args.length > 2 || (args.length == 2 && !args[1].equals("--record"))) {
+			System.err.println("Usage: java problems.qbf.solvers.GA_QBF_Regression <regression.properties> [--record]");
+			System.exit(2);
+		}
+
+		Properties config = new Properties();
+		try (InputStream in = new FileInputStream(args[0])) {
+			config.load(in);
+		}
+
+		AbstractGA.verbose = false;
+		int regressions = new GA_QBF_Regression(config, args.length == 2).check();
+		System.exit(regressions == 0 ? 0 : 1);
+
+	}
+
+}
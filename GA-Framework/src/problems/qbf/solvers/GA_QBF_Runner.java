@@ -0,0 +1,253 @@
+package problems.qbf.solvers;
+
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import metaheuristics.ga.AbstractGA;
+import metaheuristics.ga.AbstractGA.CrossoverMethod;
+import metaheuristics.ga.AbstractGA.SelectionMethod;
+import metaheuristics.ga.AsyncGA;
+import problems.qbf.QBF;
+import solutions.Solution;
+
+/**
+ * Command-line runner for batches of {@link GA_QBF} experiments. It reads a
+ * configuration file in the {@link Properties} format, in which every
+ * parameter may hold a comma separated list of values, and runs the whole
+ * Cartesian product of those values in a single JVM. Each instance file is
+ * loaded only once, and an optional warm-up run lets the JIT compile the hot
+ * code before the measured runs. Every run appends a line to a CSV file.
+ *
+ * The recognized keys, with their defaults, are:
+ *
+ * instances       = instances/kqbf/*   (paths, '*' and '?' allowed in the file name)
+ * timeToRun       = 10000              (milliseconds per run)
+ * popSizes        = 100
+ * mutationRates   = 0.03
+ * crossovers      = UNIFORM            (UNIFORM, TWO_POINT)
+ * selections      = TOURNAMENT         (TOURNAMENT, RANK, STOCHASTIC_UNIVERSAL, ROULETTE)
+ * tournamentSizes = 2
+ * seeds           = 0
+ * threads         = 0                  (0 runs the generational GA, more runs {@link AsyncGA})
+ * boundPruning    = false              (asynchronous runs only)
+ * relinkInterval  = 0
+ * eliteSize       = 10
+ * graspShare      = 0                  (share of the initial population built greedy-randomized)
+ * warmup          = 0                  (milliseconds of a discarded first run)
+ * output          = results.csv
+ *
+ * The asynchronous runs use the same selection, crossover and tournament
+ * size as the generational ones, but not the relinkInterval. Their seed
+ * fixes the draws of the breeders (see {@link AsyncGA}), not the
+ * interleaving of the threads, so the runs of the different seeds are
+ * independent replications rather than reproducible experiments. The
+ * tournament size only matters to the TOURNAMENT selection: the other
+ * selections are run once, with the first listed size.
+ *
+ * Usage: java problems.qbf.solvers.GA_QBF_Runner config.properties
+ */
+public class GA_QBF_Runner {
+
+	/**
+	 * the configuration being run
+	 */
+	protected final Properties config;
+
+	/**
+	 * the instances already loaded, by path
+	 */
+	protected final Map<String, QBF> instances = new HashMap<String, QBF>();
+
+	/**
+	 * Constructor for the GA_QBF_Runner class.
+	 *
+	 * @param config
+	 *            The sweep configuration.
+	 */
+	public GA_QBF_Runner(Properties config) {
+		this.config = config;
+	}
+
+	/**
+	 * Runs every combination of the configured parameters, writing one CSV
+	 * line per run.
+	 *
+	 * @throws IOException
+	 *             If an instance or the output cannot be read or written.
+	 */
+	public void run() throws IOException {
+
+		List<String> files = expandInstances(list("instances", "instances/kqbf/*"));
+		int timeToRun = Integer.parseInt(config.getProperty("timeToRun", "10000").trim());
+		List<String> popSizes = list("popSizes", "100");
+		List<String> mutationRates = list("mutationRates", "0.03");
+		List<String> crossovers = list("crossovers", "UNIFORM");
+		List<String> selections = list("selections", "TOURNAMENT");
+		List<String> tournamentSizes = list("tournamentSizes", "2");
+		List<String> seeds = list("seeds", "0");
+		List<String> threads = list("threads", "0");
+		boolean boundPruning = Boolean.parseBoolean(config.getProperty("boundPruning", "false").trim());
+		int relinkInterval = Integer.parseInt(config.getProperty("relinkInterval", "0").trim());
+		int eliteSize = Integer.parseInt(config.getProperty("eliteSize", "10").trim());
+		double graspShare = Double.parseDouble(config.getProperty("graspShare", "0").trim());
+		int warmup = Integer.parseInt(config.getProperty("warmup", "0").trim());
+		String output = config.getProperty("output", "results.csv").trim();
+
+		if (files.isEmpty())
+			throw new IOException("No instance matches " + config.getProperty("instances"));
+
+		if (warmup > 0) {
+			GA_QBF ga = new GA_QBF(warmup, Integer.parseInt(popSizes.get(0)), Double.parseDouble(mutationRates.get(0)),
+					load(files.get(0)));
+			ga.solve();
+		}
+
+		boolean header = !Files.exists(Paths.get(output)) || Files.size(Paths.get(output)) == 0;
+		try (PrintWriter csv = new PrintWriter(new FileWriter(output, true))) {
+			if (header)
+				csv.println("instance,popSize,mutationRate,crossover,selection,tournamentSize,seed,threads,timeToRun,cost,weight,size,elapsedMs");
+
+			for (String file : files)
+				for (String popSize : popSizes)
+					for (String mutationRate : mutationRates)
+						for (String crossover : crossovers)
+							for (String selection : selections)
+								for (String tournamentSize : tournamentSizes)
+									for (String thread : threads)
+										for (String seed : seeds) {
+											SelectionMethod selectionMethod = SelectionMethod
+													.valueOf(selection.toUpperCase(Locale.ROOT));
+											if (selectionMethod != SelectionMethod.TOURNAMENT
+													&& !tournamentSize.equals(tournamentSizes.get(0)))
+												continue;
+											GA_QBF ga = new GA_QBF(timeToRun, Integer.parseInt(popSize),
+													Double.parseDouble(mutationRate), load(file));
+											ga.setSeed(Long.parseLong(seed));
+											ga.setCrossoverMethod(CrossoverMethod.valueOf(crossover.toUpperCase(Locale.ROOT)));
+											ga.setSelectionMethod(selectionMethod);
+											ga.setTournamentSize(Integer.parseInt(tournamentSize));
+											ga.setBoundPruning(boundPruning);
+											ga.setRelinkInterval(relinkInterval);
+											ga.setEliteSize(eliteSize);
+											ga.setGraspShare(graspShare);
+
+											int nThreads = Integer.parseInt(thread);
+											long start = System.currentTimeMillis();
+											Solution<Integer> sol = nThreads > 0
+													? new AsyncGA<Integer, Integer>(ga, nThreads).solve()
+													: ga.solve();
+											long elapsed = System.currentTimeMillis() - start;
+
+											csv.println(String.join(",", file, popSize, mutationRate, crossover, selection,
+													tournamentSize, seed, thread, Integer.toString(timeToRun),
+													Double.toString(sol.cost), Double.toString(sol.weigth),
+													Integer.toString(sol.size()), Long.toString(elapsed)));
+											csv.flush();
+											System.out.println(file + " pop=" + popSize + " mut=" + mutationRate + " "
+													+ crossover + " " + selection + "/" + tournamentSize + " seed=" + seed
+													+ " threads=" + thread + " -> " + sol.cost);
+										}
+		}
+	}
+
+	/**
+	 * Gives an instance, loading it on its first use.
+	 *
+	 * @param file
+	 *            The path of the instance.
+	 * @return The QBF of the instance.
+	 * @throws IOException
+	 *             If the instance cannot be read.
+	 */
+	protected QBF load(String file) throws IOException {
+		QBF qbf = instances.get(file);
+		if (qbf == null) {
+			qbf = new QBF(file);
+			instances.put(file, qbf);
+		}
+		return qbf;
+	}
+
+	/**
+	 * Splits a comma separated configuration value.
+	 */
+	protected List<String> list(String key, String defaultValue) {
+		List<String> values = new ArrayList<String>();
+		for (String v : config.getProperty(key, defaultValue).split(",")) {
+			if (!v.trim().isEmpty())
+				values.add(v.trim());
+		}
+		return values;
+	}
+
+	/**
+	 * Expands the instance patterns, in which wildcards may appear in the file
+	 * name only. The files matched by each pattern are sorted by name.
+	 *
+	 * @param patterns
+	 *            The instance paths or patterns.
+	 * @return The instance files.
+	 * @throws IOException
+	 *             If a directory cannot be listed.
+	 */
+	protected List<String> expandInstances(List<String> patterns) throws IOException {
+
+		List<String> files = new ArrayList<String>();
+		for (String pattern : patterns) {
+			if (pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+				files.add(pattern);
+				continue;
+			}
+			Path glob = Paths.get(pattern);
+			Path dir = glob.getParent() == null ? Paths.get(".") : glob.getParent();
+			TreeSet<String> matched = new TreeSet<String>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob.getFileName().toString())) {
+				for (Path p : stream) {
+					if (Files.isRegularFile(p) && !p.getFileName().toString().equals("README"))
+						matched.add(p.toString());
+				}
+			}
+			files.addAll(matched);
+		}
+
+		return files;
+	}
+
+	/**
+	 * The command-line entry point.
+	 *
+	 * @param args
+	 *            The path of the configuration file.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1) {
+			System.err.println("Usage: java problems.qbf.solvers.GA_QBF_Runner <config.properties>");
+			System.exit(1);
+		}
+
+		Properties config = new Properties();
+		try (InputStream in = new FileInputStream(args[0])) {
+			config.load(in);
+		}
+
+		AbstractGA.verbose = false;
+		new GA_QBF_Runner(config).run();
+
+	}
+
+}
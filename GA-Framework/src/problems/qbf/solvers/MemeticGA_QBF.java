@@ -0,0 +1,130 @@
+package problems.qbf.solvers;
+
+import java.io.IOException;
+
+import metaheuristics.ga.AbstractGA.Population;
+import problems.qbf.QBF;
+import solutions.Solution;
+
+/**
+ * Memetic variant of {@link GA_QBF}: after the mutation, each feasible
+ * offspring is improved with probability {@link #localSearchRate} by a short
+ * run of {@link TS_QBF}, and the best selection reached replaces it in the
+ * offsprings (lamarckian learning).
+ */
+public class MemeticGA_QBF extends GA_QBF {
+
+	/**
+	 * the probability of an offspring being improved by the local search
+	 */
+	protected double localSearchRate = 0.1;
+
+	/**
+	 * the number of tabu search iterations of each improvement
+	 */
+	protected int localSearchIterations = 50;
+
+	/**
+	 * the tabu search used as improvement operator
+	 */
+	protected final TS_QBF tabu;
+
+	/**
+	 * Constructor for the MemeticGA_QBF class over an already loaded QBF.
+	 *
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 * @param popSize
+	 *            Size of the population.
+	 * @param mutationRate
+	 *            The mutation rate.
+	 * @param qbf
+	 *            The QBF objective function.
+	 */
+	public MemeticGA_QBF(Integer timeToRun, Integer popSize, Double mutationRate, QBF qbf) {
+		super(timeToRun, popSize, mutationRate, qbf);
+		this.incumbentName = "MemeticGA";
+		this.tabu = new TS_QBF(timeToRun, qbf);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The mutants are then improved by the local search, each one with
+	 * probability {@link #localSearchRate}.
+	 */
+	@Override
+	protected Population mutate(Population offsprings) {
+
+		super.mutate(offsprings);
+
+		for (Chromosome c : offsprings) {
+			if (rng.nextDouble() < localSearchRate && c.isFeasible())
+				improve(c);
+		}
+
+		return offsprings;
+	}
+
+	/**
+	 * Replaces the genes of a feasible chromosome by those of the best
+	 * selection reached from it by the tabu search, which values the
+	 * selections in the sense of the evaluator (see
+	 * {@link problems.qbf.QBFGains}), so that a {@link problems.qbf.QBF_Inverse}
+	 * is improved toward -f too.
+	 *
+	 * @param chromosome
+	 *            The chromosome being improved.
+	 */
+	protected void improve(Chromosome chromosome) {
+
+		boolean[] selection = new boolean[chromosomeSize];
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			selection[locus] = chromosome.get(locus) == 1;
+		}
+
+		tabu.improve(selection, localSearchIterations);
+
+		for (int locus = 0; locus < chromosomeSize; locus++) {
+			int gene = selection[locus] ? 1 : 0;
+			if (chromosome.get(locus) != gene)
+				chromosome.set(locus, gene);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The tabu search is seeded from the generator of the GA.
+	 */
+	@Override
+	public void setSeed(long seed) {
+		super.setSeed(seed);
+		tabu.setSeed(rng.nextLong());
+	}
+
+	public void setLocalSearchRate(double localSearchRate) {
+		this.localSearchRate = localSearchRate;
+	}
+
+	public void setLocalSearchIterations(int localSearchIterations) {
+		this.localSearchIterations = localSearchIterations;
+	}
+
+	/**
+	 * A main method used for testing the memetic GA.
+	 *
+	 */
+	public static void main(String[] args) throws IOException {
+
+		long startTime = System.currentTimeMillis();
+		MemeticGA_QBF ga = new MemeticGA_QBF(30000, 100, 1.0 / 100.0, new QBF("instances/kqbf/kqbf040"));
+		Solution<Integer> bestSol = ga.solve();
+		System.out.println("maxVal = " + bestSol);
+		long endTime = System.currentTimeMillis();
+		long totalTime = endTime - startTime;
+		System.out.println("Time = " + (double) totalTime / (double) 1000 + " seg");
+
+	}
+
+}
@@ -0,0 +1,217 @@
+package problems.qbf.solvers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import metaheuristics.ga.AbstractGA;
+import metaheuristics.tabu.AbstractTS;
+import metaheuristics.util.SharedIncumbent;
+import problems.qbf.QBF;
+import problems.qbf.QBFGains;
+import problems.qbf.QBFLocalSearch;
+import solutions.Solution;
+
+/**
+ * Portfolio of heterogeneous solvers for the (knapsack) QBF, each one running
+ * on its own thread against the same read-only {@link QBF} for the same
+ * amount of time: the {@link GA_QBF}, the {@link MemeticGA_QBF}, the
+ * {@link TS_QBF} and a random-restart local search. Different algorithms win
+ * on different instances, and the portfolio keeps every core busy with a
+ * different one.
+ *
+ * The solvers cooperate through a {@link SharedIncumbent}: each one offers
+ * its improvements to it, the GAs bring a better incumbent into their
+ * populations at every generation, and the searches restart from it. The
+ * neighbourhoods of the searches are evaluated from the gain vectors of
+ * {@link QBFGains}, owned by each thread, and not through the
+ * {@code evaluate*Cost} methods of the QBF, which go through its shared
+ * {@link QBF#variables} and so cannot be called concurrently.
+ */
+public class Portfolio_QBF {
+
+	/**
+	 * the QBF being solved, shared by the solvers
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * Time limit, in milliseconds.
+	 */
+	protected final int timeToRun;
+
+	/**
+	 * the best solution found by the solvers
+	 */
+	protected final SharedIncumbent<Solution<Integer>> incumbent = new SharedIncumbent<Solution<Integer>>();
+
+	/**
+	 * the population size of the GAs
+	 */
+	protected int popSize = 100;
+
+	/**
+	 * the mutation rate of the GAs
+	 */
+	protected double mutationRate = 1.0 / 100.0;
+
+	/**
+	 * the seed from which the generator of each solver is seeded
+	 */
+	protected long seed = 0;
+
+	/**
+	 * Constructor for the Portfolio_QBF class.
+	 *
+	 * @param qbf
+	 *            The QBF being solved.
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 */
+	public Portfolio_QBF(QBF qbf, int timeToRun) {
+		this.qbf = qbf;
+		this.timeToRun = timeToRun;
+	}
+
+	/**
+	 * Runs every solver of the portfolio on its own thread until the time
+	 * limit.
+	 *
+	 * @return The best feasible solution found by any solver.
+	 */
+	public Solution<Integer> solve() {
+
+		long endTime = System.currentTimeMillis() + timeToRun;
+		SplittableRandom random = new SplittableRandom(seed);
+		long gaSeed = random.nextLong();
+		long memeticSeed = random.nextLong();
+		long tabuSeed = random.nextLong();
+		SplittableRandom restartRandom = random.split();
+
+		List<Callable<Void>> members = new ArrayList<Callable<Void>>();
+		members.add(() -> {
+			GA_QBF ga = new GA_QBF(timeToRun, popSize, mutationRate, qbf);
+			ga.setIncumbent(incumbent, "GA");
+			ga.setSeed(gaSeed);
+			ga.solve();
+			return null;
+		});
+		members.add(() -> {
+			MemeticGA_QBF ga = new MemeticGA_QBF(timeToRun, popSize, mutationRate, qbf);
+			ga.setIncumbent(incumbent, "MemeticGA");
+			ga.setSeed(memeticSeed);
+			ga.solve();
+			return null;
+		});
+		members.add(() -> {
+			TS_QBF ts = new TS_QBF(timeToRun, qbf);
+			ts.setIncumbent(incumbent, "Tabu");
+			ts.setSeed(tabuSeed);
+			ts.solve();
+			return null;
+		});
+		members.add(() -> {
+			randomRestarts(endTime, restartRandom);
+			return null;
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(members.size());
+		try {
+			for (Future<Void> future : executor.invokeAll(members)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Portfolio solver failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return incumbent.get().solution;
+	}
+
+	/**
+	 * Random-restart local search: alternately from a random solution and
+	 * from a perturbation of the incumbent, each start is taken to a local
+	 * optimum by {@link QBFLocalSearch#improve}.
+	 *
+	 * @param endTime
+	 *            The time at which the search stops.
+	 * @param random
+	 *            The generator of the random choices.
+	 */
+	protected void randomRestarts(long endTime, SplittableRandom random) {
+
+		for (long start = 0; System.currentTimeMillis() < endTime; start++) {
+			QBFGains state = start % 2 == 0 ? QBFLocalSearch.randomSolution(qbf, random)
+					: restartFromIncumbent(random);
+			QBFLocalSearch.improve(state);
+			offer(state, "RandomRestart");
+		}
+	}
+
+	/**
+	 * Builds a perturbation of the incumbent, flipping about 5% of the
+	 * elements, or a random solution while there is no incumbent.
+	 */
+	protected QBFGains restartFromIncumbent(SplittableRandom random) {
+		Solution<Integer> sol = incumbent.get().solution;
+		if (sol == null)
+			return QBFLocalSearch.randomSolution(qbf, random);
+		QBFGains state = new QBFGains(qbf, sol);
+		QBFLocalSearch.perturb(state, Math.max(2, qbf.size / 20), random);
+		return state;
+	}
+
+	/**
+	 * Offers the solution of a state to the incumbent, if it is better.
+	 */
+	protected void offer(QBFGains state, String source) {
+		if (state.getCost() > incumbent.getCost())
+			incumbent.offer(state.toSolution(), state.getCost(), source);
+	}
+
+	public SharedIncumbent<Solution<Integer>> getIncumbent() {
+		return incumbent;
+	}
+
+	public void setPopSize(int popSize) {
+		this.popSize = popSize;
+	}
+
+	public void setMutationRate(double mutationRate) {
+		this.mutationRate = mutationRate;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * A main method for running the portfolio on an instance, given as first
+	 * argument, for a time in seconds, given as second argument.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String file = args.length > 0 ? args[0] : "instances/kqbf/kqbf400";
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+		AbstractGA.verbose = false;
+		AbstractTS.verbose = false;
+		long startTime = System.currentTimeMillis();
+		Portfolio_QBF portfolio = new Portfolio_QBF(new QBF(file), seconds * 1000);
+		Solution<Integer> bestSol = portfolio.solve();
+		System.out.println("maxVal = " + bestSol);
+		System.out.println("Found by " + portfolio.getIncumbent().get().source);
+		System.out.println("Time = " + (double) (System.currentTimeMillis() - startTime) / (double) 1000 + " seg");
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package problems.qbf.solvers;
+
+import java.io.IOException;
+
+import metaheuristics.tabu.AbstractTS;
+import problems.qbf.QBF;
+import problems.qbf.QBFGains;
+import solutions.Solution;
+
+/**
+ * Metaheuristic TS (Tabu Search) for obtaining an optimal solution to a
+ * (knapsack) QBF. The moves are valued in O(1) from the gain vector of a
+ * {@link QBFGains}, updated in O(n) per flip, instead of the
+ * {@code evaluate*Cost} methods of the QBF, which cost O(n) per move and go
+ * through its shared {@link QBF#variables}. The gains follow the sense of
+ * the QBF, so the search maximizes -f for a {@link problems.qbf.QBF_Inverse}.
+ */
+public class TS_QBF extends AbstractTS<Integer> {
+
+	/**
+	 * the QBF objective function
+	 */
+	protected final QBF qbf;
+
+	/**
+	 * the gains of the current selection
+	 */
+	protected QBFGains gains;
+
+	/**
+	 * Constructor for the TS_QBF class over an already loaded QBF.
+	 *
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 * @param qbf
+	 *            The QBF objective function.
+	 */
+	public TS_QBF(Integer timeToRun, QBF qbf) {
+		super(qbf, timeToRun);
+		this.qbf = qbf;
+	}
+
+	/**
+	 * Constructor for the TS_QBF class.
+	 *
+	 * @param timeToRun
+	 *            Time limit, in milliseconds.
+	 * @param filename
+	 *            Name of the file for which the objective function parameters
+	 *            should be read.
+	 * @throws IOException
+	 *             Necessary for I/O operations.
+	 */
+	public TS_QBF(Integer timeToRun, String filename) throws IOException {
+		this(timeToRun, new QBF(filename));
+	}
+
+	@Override
+	protected double insertionCost(int index) {
+		return gains.insertionDelta(index);
+	}
+
+	@Override
+	protected double removalCost(int index) {
+		return gains.removalDelta(index);
+	}
+
+	@Override
+	protected double exchangeCost(int in, int out) {
+		return gains.exchangeDelta(in, out);
+	}
+
+	@Override
+	protected double resetGains(boolean[] selection) {
+		gains = new QBFGains(qbf);
+		for (int i = 0; i < selection.length; i++) {
+			if (selection[i])
+				gains.flip(i);
+		}
+		return gains.getCost();
+	}
+
+	@Override
+	protected void updateGains(int index) {
+		gains.flip(index);
+	}
+
+	@Override
+	protected Integer element(int index) {
+		return index;
+	}
+
+	@Override
+	protected int index(Integer element) {
+		return element;
+	}
+
+	/**
+	 * A main method used for testing the TS metaheuristic.
+	 *
+	 */
+	public static void main(String[] args) throws IOException {
+
+		long startTime = System.currentTimeMillis();
+		TS_QBF ts = new TS_QBF(30000, "instances/kqbf/kqbf040");
+		Solution<Integer> bestSol = ts.solve();
+		System.out.println("maxVal = " + bestSol);
+		System.out.println("Iterations = " + ts.getIteration());
+		long endTime = System.currentTimeMillis();
+		long totalTime = endTime - startTime;
+		System.out.println("Time = " + (double) totalTime / (double) 1000 + " seg");
+
+	}
+
+}